@@ -0,0 +1,38 @@
+package javazoom.jlme.decoder;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The windowing of {@link SynthesisFilter} with the Vector API, a vector of
+ * samples for each load. The class is compiled apart from the decoder, with
+ * <code>--add-modules jdk.incubator.vector</code>, and {@link SynthesisFilter}
+ * loads it by name only if the incubator module is present.
+ */
+final class VectorWindow implements SynthesisWindow {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * @throws UnsupportedOperationException If the vectors of the CPU do not
+     *                                       divide the 32 samples, with at least 4 lanes.
+     */
+    VectorWindow() {
+        final int lanes = SPECIES.length();
+        if (lanes < 4 || 32 % lanes != 0) {
+            throw new UnsupportedOperationException("No vector of floats for the window: " + SPECIES);
+        }
+    }
+
+    public void window(float[] v, int base, float[] d16, float[] sum) {
+        for (int i = 0; i < 32; i += SPECIES.length()) {
+            FloatVector acc = FloatVector.fromArray(SPECIES, v, base + i)
+                    .mul(FloatVector.fromArray(SPECIES, d16, i));
+            for (int dp = 32; dp < 512; dp += 32) {
+                final FloatVector slot = FloatVector.fromArray(SPECIES, v, base + dp + i);
+                acc = acc.add(slot.mul(FloatVector.fromArray(SPECIES, d16, dp + i)));
+            }
+            acc.intoArray(sum, i);
+        }
+    }
+}
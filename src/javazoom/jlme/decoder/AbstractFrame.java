@@ -151,6 +151,22 @@ class AbstractFrame {
         }
     }
 
+    /**
+     * The length of the frame follows from the bitrate, the sampling frequency
+     * and the padding: (144 * bitrate / sampleFrequency) + padding [bytes].
+     *
+     * @param header The header information, common to all layers.
+     * @return The length of the frame in bytes, header included.
+     * @apiNote Only support to MPEG 1 Layer 3.
+     */
+    protected int getFrameLength(final int header) {
+        // Convert the value of kHz to hz.
+        final int bitrate = getBitRateIndex(header) * 1_000;
+        // Round, 44.1f * 1_000 is a bit less than 44100.
+        final int sampleFrequency = Math.round(getSamplingFrequency(header) * 1_000);
+        return (144 * bitrate / sampleFrequency) + (isPaddingBit(header) ? 1 : 0);
+    }
+
     /**
      * The padding is a method to adjust the average length in time of an audio
      * frame to the duration of the corresponding PCM samples, by conditionally
@@ -20,77 +20,146 @@
  */
 package javazoom.jlme.decoder;
 
+/**
+ * Circular reservoir holding the main data of the last frames, packed eight
+ * bits per byte. Bits are read through a 64 bit cache that is refilled a
+ * byte at a time, so most reads are a shift of the cache only.
+ */
 final class BitReserve {
-  private final static int BUFSIZE = 4096 * 8;
+  private final static int BUFSIZE = 4096;
   private final static int BUFSIZE_MASK = BUFSIZE - 1;
-  static int offset, buf_byte_idx;
-  private static final int[] buf = new int[BUFSIZE];
-  static int buf_bit_idx;
-  public static int totbit;
-  //public int hsstell() {
-  //  return totbit;
-  //}
+  private final static int BITSIZE_MASK = (BUFSIZE << 3) - 1;
+  private final byte[] buf = new byte[BUFSIZE];
+  // next byte written by hputbuf
+  private int offset;
+  // bit index in buf of the first bit that is not in the cache
+  private int fetch_idx;
+  // bits read ahead, the next bit to return is the most significant one
+  private long cache;
+  private int cache_bits;
+  public int totbit;
 
   public final int hgetbits(int N) {
+    if (N > 32) {
+      // only the last 32 bits fit in the result
+      skipbits(N - 32);
+      N = 32;
+    }
     totbit += N;
-    val = 0;
-    if (buf_byte_idx + N < BUFSIZE) {
-      while (N-- > 0) {
-        val <<= 1;
-        val |= ((buf[buf_byte_idx++] == 0) ? 0 : 1);
-      }
-    } else {
-      while (N-- > 0) {
-        val <<= 1;
-        val |= ((buf[buf_byte_idx] == 0) ? 0 : 1);
-        buf_byte_idx = (buf_byte_idx + 1) & BUFSIZE_MASK;
-      }
+    if (N == 0) {
+      return 0;
     }
-
+    if (cache_bits < N) {
+      fill();
+    }
+    int val = (int) (cache >>> (64 - N));
+    cache <<= N;
+    cache_bits -= N;
     return val;
   }
 
-
-  static int val;
-
   public final int hget1bit() {
     totbit++;
-    val = buf[buf_byte_idx];
-    buf_byte_idx = (buf_byte_idx + 1) & BUFSIZE_MASK;
+    if (cache_bits == 0) {
+      fill();
+    }
+    int val = (int) (cache >>> 63);
+    cache <<= 1;
+    cache_bits--;
     return val;
   }
 
+  /**
+   * Returns the next N bits, 1 <= N <= 32, without consuming them.
+   */
+  public final int peekbits(int N) {
+    if (cache_bits < N) {
+      fill();
+    }
+    return (int) (cache >>> (64 - N));
+  }
+
+  /**
+   * Consumes N bits already looked at with peekbits.
+   */
+  public final void flushbits(int N) {
+    totbit += N;
+    cache <<= N;
+    cache_bits -= N;
+  }
+
+  private void skipbits(int N) {
+    totbit += N;
+    if (N < cache_bits) {
+      cache <<= N;
+      cache_bits -= N;
+    } else {
+      fetch_idx = (fetch_idx + N - cache_bits) & BITSIZE_MASK;
+      cache = 0;
+      cache_bits = 0;
+    }
+  }
+
+  /**
+   * Tops the cache up to at least 57 bits.
+   */
+  private void fill() {
+    int pos = fetch_idx >>> 3;
+    int bit = fetch_idx & 7;
+    if (bit != 0) {
+      // only after a rewind to the middle of a byte, the cache is empty then
+      cache |= (long) (buf[pos] & (0xFF >>> bit)) << (56 - cache_bits + bit);
+      cache_bits += 8 - bit;
+      pos = (pos + 1) & BUFSIZE_MASK;
+    }
+    while (cache_bits <= 56) {
+      cache |= (long) (buf[pos] & 0xFF) << (56 - cache_bits);
+      cache_bits += 8;
+      pos = (pos + 1) & BUFSIZE_MASK;
+    }
+    fetch_idx = pos << 3;
+  }
+
+  /**
+   * Puts the bits of the cache back, so the next read sees bytes written meanwhile.
+   */
+  private void drop() {
+    fetch_idx = (fetch_idx - cache_bits) & BITSIZE_MASK;
+    cache = 0;
+    cache_bits = 0;
+  }
+
   public final void hputbuf(int val) {
-    buf[offset++] = val & 0x80;
-    buf[offset++] = val & 0x40;
-    buf[offset++] = val & 0x20;
-    buf[offset++] = val & 0x10;
-    buf[offset++] = val & 0x08;
-    buf[offset++] = val & 0x04;
-    buf[offset++] = val & 0x02;
-    buf[offset++] = val & 0x01;
-    if (offset == BUFSIZE)
-      offset = 0;
+    if (cache_bits != 0) {
+      drop();
+    }
+    buf[offset] = (byte) val;
+    offset = (offset + 1) & BUFSIZE_MASK;
   }
 
 
-  public final void rewindNbits(int N) {
-    totbit -= N;
-    buf_byte_idx -= N;
-    if (buf_byte_idx < 0) {
-      buf_byte_idx += BUFSIZE;
+  /**
+   * Appends len bytes of b in one copy, as len calls to hputbuf.
+   */
+  public final void hputbuf(byte[] b, int off, int len) {
+    if (cache_bits != 0) {
+      drop();
     }
+    final int first = Math.min(len, BUFSIZE - offset);
+    System.arraycopy(b, off, buf, offset, first);
+    System.arraycopy(b, off + first, buf, 0, len - first);
+    offset = (offset + len) & BUFSIZE_MASK;
   }
 
-  static int bits;
+  public final void rewindNbits(int N) {
+    totbit -= N;
+    fetch_idx = (fetch_idx - cache_bits - N) & BITSIZE_MASK;
+    cache = 0;
+    cache_bits = 0;
+  }
 
   public final void rewindNbytes(int N) {
-    bits = (N << 3);
-    totbit -= bits;
-    buf_byte_idx -= bits;
-    if (buf_byte_idx < 0) {
-      buf_byte_idx += BUFSIZE;
-    }
+    rewindNbits(N << 3);
   }
 
 }
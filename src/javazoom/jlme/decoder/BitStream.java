@@ -25,7 +25,11 @@ import javazoom.jlme.tag.TagReader;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * The <code>Bistream</code> class is responsible for parsing an MPEG audio bitstream. <b>REVIEW:</b> much of the parsing currently occurs in the
@@ -38,6 +42,11 @@ public final class BitStream {
     static final byte INITIAL_SYNC = 0;
     static final byte STRICT_SYNC = 1;
     private final static int BUFFER_INT_SIZE = 433;
+    private final static int SYNC_BLOCK_SIZE = 512;
+    /**
+     * The CRC and the side information of a stereo frame, 2 + 32 bytes.
+     */
+    private final static int SIDE_INFO_BYTES = 34;
     private final static int[] bitmask = {0,
             0x00000001, 0x00000003, 0x00000007, 0x0000000F,
             0x0000001F, 0x0000003F, 0x0000007F, 0x000000FF,
@@ -45,63 +54,97 @@ public final class BitStream {
             0x00001FFF, 0x00003FFF, 0x00007FFF, 0x0000FFFF,
             0x0001FFFF};
 
-    private static PushBackStream source;
-    private static final int[] framebuffer = new int[BUFFER_INT_SIZE];
-    private static int framesize;
-    private static final byte[] frame_bytes = new byte[BUFFER_INT_SIZE * 4];
-    private static int wordpointer;
-    private static int bitindex;
-    private static int syncword;
-    private static boolean single_ch_mode;
-    private final static Header header = new Header();
-    private final static byte[] syncbuf = new byte[4];
+    private final ByteSource source;
+    private final int[] framebuffer = new int[BUFFER_INT_SIZE];
+    private int framesize;
+    private final byte[] frame_bytes = new byte[BUFFER_INT_SIZE * 4];
+    /**
+     * The frame bytes seen as big endian ints.
+     */
+    private final IntBuffer frame_words = ByteBuffer.wrap(frame_bytes).asIntBuffer();
+    private int wordpointer;
+    private int bitindex;
+    private int syncword;
+    private boolean single_ch_mode;
+    private final Header header = new Header();
+    private final byte[] syncbuf = new byte[4];
+    /**
+     * The bytes scanned for a header, and the same bytes seen as ints and longs.
+     */
+    private final byte[] syncblock = new byte[SYNC_BLOCK_SIZE];
+    private final ByteBuffer syncwords = ByteBuffer.wrap(syncblock);
 
-    static boolean sync;
+    /**
+     * The bytes of the ID3v2 tag at the start of the stream left to skip, -1
+     * until the start of the stream has been looked at.
+     */
+    private int tagLeft = -1;
 
     /**
-     * Representation in bytes of mp3.
+     * False until the first frame has been read and looked at for a VBR header.
      */
-    private final BufferedInputStream bufferByte;
+    private boolean firstFrameRead;
+    private VbrHeader vbrHeader;
 
-    private final BufferedInputStream bufferCopy;
+    /**
+     * Decodes the stream in a single pass. An ID3v2 tag at the start of the
+     * stream is skipped when the first frame is read.
+     *
+     * @param in The MP3 stream.
+     */
+    public BitStream(InputStream in) {
+        this(new PushBackStream(in, 1 << 16));
+    }
 
+    /**
+     * @deprecated The second stream is not read anymore, use {@link #BitStream(InputStream)}.
+     * The frames of a file can be read with {@link Frame#readFrames(BufferedInputStream)}.
+     */
+    @Deprecated
     public BitStream(InputStream in, InputStream copy) {
-        bufferByte = new BufferedInputStream(in);
-        bufferCopy = new BufferedInputStream(copy);
-
-        try {
-            // Read the ID3 tag, the object read all bytes
-            // of ID3 tag and left to buffer with the bytes
-            // of frames audio.
-            TagReader tagReader = new TagReader(bufferCopy);
-            // Read all the frames of audio and store in the
-            // array, the size of each frame is determine for
-            // itself.
-            ArrayList<Frame> frames = new ArrayList<>();
-            // Like the size of each frame is determine for
-            // itself, is important read bytes to that it reach
-            // the final of file.
-            while (bufferCopy.available() > 0) {
-                frames.add(new Frame(bufferCopy));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this(in);
+    }
 
-        source = new PushBackStream(in, 512);
+    /**
+     * Decodes a local file, mapped in memory.
+     *
+     * @param file The MP3 file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public BitStream(Path file) throws IOException {
+        this(openChannel(file));
+    }
+
+    /**
+     * Decodes the rest of a file channel from its current position. The
+     * channel is mapped in memory and closed with the stream.
+     *
+     * @param channel The channel of the MP3 file.
+     * @throws IOException If the channel cannot be mapped.
+     */
+    public BitStream(FileChannel channel) throws IOException {
+        this(new MappedSource(channel));
+    }
+
+    BitStream(ByteSource source) {
+        this.source = source;
         closeFrame();
-        Header.syncmode = INITIAL_SYNC;
+        header.syncmode = INITIAL_SYNC;
     }
 
-    static int read;
+    private static FileChannel openChannel(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("The file is too large to be mapped: " + file);
+        }
+        return channel;
+    }
 
     public final boolean isSyncCurrentPosition(int syncmode) throws IOException {
-        if ((read = source.read(syncbuf, 0, 4)) > 0) {  //if(read>=0){
-            source.unread(syncbuf, 0, read);
-            if (read == 4) {
-                headerstring = ((syncbuf[0] << 24) & 0xFF000000) | ((syncbuf[1] << 16) & 0x00FF0000) | ((syncbuf[2] << 8) & 0x0000FF00) | ((syncbuf[3]) & 0x000000FF);
-                return isSyncMark(headerstring, syncmode, syncword);
-            }
+        if (source.peek(syncbuf, 0, 4) == 4) {
+            int headerstring = ((syncbuf[0] << 24) & 0xFF000000) | ((syncbuf[1] << 16) & 0x00FF0000) | ((syncbuf[2] << 8) & 0x0000FF00) | ((syncbuf[3]) & 0x000000FF);
+            return isSyncMark(headerstring, syncmode, syncword);
         }
 
         return true;
@@ -116,6 +159,7 @@ public final class BitStream {
      * @return The syncMark value
      */
     public final boolean isSyncMark(int headerstring, int syncmode, int word) {
+        boolean sync;
         if (syncmode == INITIAL_SYNC) {
             sync = ((headerstring & 0xFFF00000) == 0xFFF00000);
         } else {
@@ -125,16 +169,17 @@ public final class BitStream {
         if (sync)
             if (sync = (((headerstring >>> 10) & 3) != 3))
                 if (sync = (((headerstring >>> 17) & 3) != 0))
-                    sync = (((headerstring >>> 19) & 3) != 1);
+                    if (sync = (((headerstring >>> 19) & 3) != 1))
+                        // only Layer III is decoded, and the free format or a bad bitrate has no frame length
+                        if (sync = (((headerstring >>> 17) & 3) == 1))
+                            sync = ((headerstring >>> 12) & 0xF) != 0 && ((headerstring >>> 12) & 0xF) != 0xF;
 
         return sync;
     }
 
-
-    static int sum, returnvalue;
-
     public final int readbits(int num) {
-        sum = bitindex + num;
+        int sum = bitindex + num;
+        int returnvalue;
         if (sum <= 32) {
             returnvalue = (framebuffer[wordpointer] >>> (32 - sum)) & bitmask[num];
             if ((bitindex += num) == 32) {
@@ -168,12 +213,98 @@ public final class BitStream {
      * @throws IOException Description of Exception
      */
     public Header readFrame() throws IOException {
+        if (tagLeft != 0) {
+            skipTag();
+        }
         //if (framesize == -1) {
-        header.read_header(this);
+        if (!header.read_header(this)) {
+            return null;
+        }
         //}
+        if (!firstFrameRead) {
+            firstFrameRead = true;
+            final long position = source.position();
+            final int length = header.getFrameLengthInBytes();
+            vbrHeader = VbrHeader.parse(frame_bytes, framesize, header, position < 0 ? -1 : position - length);
+        }
         return header;
     }
 
+    /**
+     * @return The Xing, Info or VBRI header of the first frame, or null if
+     * the first frame has not been read yet or is audio.
+     */
+    public VbrHeader getVbrHeader() {
+        return vbrHeader;
+    }
+
+    /**
+     * Goes to the frame at the offset, for the files read through a mapping.
+     * The frame read before is dropped.
+     *
+     * @param position The offset in the file of the header of a frame.
+     * @throws IOException If the stream cannot seek.
+     */
+    void seek(long position) throws IOException {
+        source.seek(position);
+        tagLeft = 0;
+        firstFrameRead = true;
+        closeFrame();
+    }
+
+    /**
+     * Skips the ID3v2 tag if the stream starts with one, otherwise gives back
+     * the bytes looked at. The source is marked after each piece of the tag,
+     * so a {@link FeedSource} short of bytes drops the pieces skipped and the
+     * skip goes on from there with the next chunk.
+     */
+    private void skipTag() throws IOException {
+        if (tagLeft < 0) {
+            final byte[] tagHeader = new byte[TagReader.HEADER_SIZE];
+            if (readFully(tagHeader, 0, 4) != 4) {
+                tagLeft = 0;
+                return;
+            }
+            if (tagHeader[0] != 'I' || tagHeader[1] != 'D' || tagHeader[2] != '3') {
+                source.unread(tagHeader, 0, 4);
+                tagLeft = 0;
+                return;
+            }
+            final int headerBytes = 4 + readFully(tagHeader, 4, TagReader.HEADER_SIZE - 4);
+            final int length = TagReader.getTagLength(tagHeader);
+            if (length < 0) {
+                // not a tag after all, the bytes may start a frame
+                source.unread(tagHeader, 0, headerBytes);
+                tagLeft = 0;
+                return;
+            }
+            tagLeft = length;
+            source.mark();
+        }
+        // frame_bytes is free until the first frame is read
+        while (tagLeft > 0) {
+            final int read = source.read(frame_bytes, 0, Math.min(tagLeft, frame_bytes.length));
+            if (read <= 0) {
+                tagLeft = 0;
+                return;
+            }
+            tagLeft -= read;
+            source.mark();
+        }
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            final int read = source.read(b, off + total, len - total);
+            if (read <= 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
     /**
      * Unreads the bytes read from the frame.
      */
@@ -184,6 +315,18 @@ public final class BitStream {
         }
     }
 
+    /**
+     * Gives back the last three bytes of a header found by
+     * {@link #findAndReturnSyncHeader(byte)} and rejected, so the search goes
+     * on from its second byte.
+     */
+    final void unreadSyncHeader(int headerstring) {
+        syncbuf[0] = (byte) (headerstring >>> 16);
+        syncbuf[1] = (byte) (headerstring >>> 8);
+        syncbuf[2] = (byte) headerstring;
+        source.unread(syncbuf, 0, 3);
+    }
+
     /**
      * Description of the Method
      */
@@ -191,6 +334,13 @@ public final class BitStream {
         framesize = wordpointer = bitindex = -1;
     }
 
+    /**
+     * @return True if a frame has been read and not closed yet.
+     */
+    final boolean isFrameOpen() {
+        return framesize > 0;
+    }
+
     /**
      * Set the word we want to sync the header to. In Big-Endian byte order
      *
@@ -201,26 +351,65 @@ public final class BitStream {
         single_ch_mode = ((syncword0 & 0x000000C0) == 0x000000C0);
     }
 
-    static int headerstring;
-
+    /**
+     * Finds the next header that passes {@link #isSyncMark(int, int, int)}.
+     * The header is most often right at the current position. Otherwise the
+     * bytes are read by blocks, scanned eight at a time for a 0xFF, and the
+     * bytes after the header found are given back to the source. The frame
+     * length is checked against the next header by {@link Header}.
+     *
+     * @return The header, or -1 at the end of the stream.
+     */
     public int findAndReturnSyncHeader(byte syncmode) throws IOException {
-        byte[] buffer = new byte[4];
-
-        if (source.read(buffer, 0, 3) != 3) {
+        if (readFully(syncblock, 0, 4) != 4) {
             return -1;
         }
-
-        headerstring = buffer[0] << 16 & 0xff0000 | buffer[1] << 8 & 0xff00 | buffer[2] & 0xff;
-
-        do {
-            headerstring <<= 8;
-            if (source.read(buffer, 3, 1) != 1) {
+        int headerstring = syncwords.getInt(0);
+        if (isSyncMark(headerstring, syncmode, syncword)) {
+            return headerstring;
+        }
+        // the last three bytes may begin a header
+        System.arraycopy(syncblock, 1, syncblock, 0, 3);
+        int length = 3;
+        while (true) {
+            final int read = source.read(syncblock, length, SYNC_BLOCK_SIZE - length);
+            if (read <= 0) {
                 return -1;
             }
-            headerstring |= buffer[3] & 0xff;
-        } while (!isSyncMark(headerstring, syncmode, syncword));
+            length += read;
+            final int found = scanSyncBlock(length, syncmode);
+            if (found >= 0) {
+                source.unread(syncblock, found + 4, length - found - 4);
+                return syncwords.getInt(found);
+            }
+            System.arraycopy(syncblock, length - 3, syncblock, 0, 3);
+            length = 3;
+        }
+    }
 
-        return headerstring;
+    /**
+     * @return The offset of the first header in the block, or -1.
+     */
+    private int scanSyncBlock(int length, byte syncmode) {
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            // a byte 0xFF is a byte 0 of the complement, found with the carry of the subtraction
+            final long word = ~syncwords.getLong(i);
+            if (((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) == 0) {
+                continue;
+            }
+            for (int j = i; j < i + 8 && j + 4 <= length; j++) {
+                if (syncblock[j] == -1 && isSyncMark(syncwords.getInt(j), syncmode, syncword)) {
+                    return j;
+                }
+            }
+        }
+        for (; i + 4 <= length; i++) {
+            if (syncblock[i] == -1 && isSyncMark(syncwords.getInt(i), syncmode, syncword)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -236,30 +425,33 @@ public final class BitStream {
         source.read(frame_bytes, 0, frameLength);
     }
 
-    static int b, k;
-    static byte b0, b1, b2, b3;
+    /**
+     * Moves the next bytes of the frame, the main data after the side
+     * information, to the bit reservoir in one copy.
+     *
+     * @param len The number of bytes, up to the end of the frame.
+     */
+    final void readMainData(BitReserve br, int len) {
+        assert (bitindex & 7) == 0;
+        final int offset = (wordpointer << 2) + (bitindex >>> 3);
+        br.hputbuf(frame_bytes, offset, len);
+        wordpointer = (offset + len) >>> 2;
+        bitindex = ((offset + len) & 3) << 3;
+    }
 
     /**
-     * Parses the data previously read with read_frame_data().
+     * Parses the data previously read with read_frame_data(). Only the bytes
+     * read with readbits, the CRC and the side information, are converted to
+     * ints, the main data is copied as bytes by readMainData.
      */
     final void parse_frame() {
-        // Convert Bytes read to int
-        for (k = 0, b = 0; k < framesize; k += 4) {
-            b0 = frame_bytes[k];
-            if (k + 3 < framesize) {
-                b3 = frame_bytes[k + 3];
-                b2 = frame_bytes[k + 2];
-                b1 = frame_bytes[k + 1];
-            } else if (k + 2 < framesize) {
-                b3 = 0;
-                b2 = frame_bytes[k + 2];
-                b1 = frame_bytes[k + 1];
-            } else if (k + 1 < framesize) {
-                b2 = b3 = 0;
-                b1 = frame_bytes[k + 1];
-            }
-            framebuffer[b++] = ((b0 << 24) & 0xFF000000) | ((b1 << 16) & 0x00FF0000) | ((b2 << 8) & 0x0000FF00) | (b3 & 0x000000FF);
+        // Convert Bytes read to int, the bytes past the frame in the last int are zero
+        final int words = (Math.min(framesize, SIDE_INFO_BYTES) + 3) >>> 2;
+        for (int k = framesize; k < words << 2; k++) {
+            frame_bytes[k] = 0;
         }
+        frame_words.rewind();
+        frame_words.get(framebuffer, 0, words);
 
         wordpointer = bitindex = 0;
     }
@@ -0,0 +1,58 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+
+/**
+ * The bytes of the MPEG stream as seen by {@link BitStream}, which reads the
+ * headers and frames from it and may give back the bytes of a frame.
+ */
+interface ByteSource {
+
+    /**
+     * @return The number of bytes read, or -1 at the end of the stream.
+     */
+    int read(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Gives back the last <code>len</code> bytes read, so they are read again.
+     */
+    void unread(byte[] b, int off, int len);
+
+    /**
+     * Reads the next bytes without consuming them.
+     *
+     * @return The number of bytes read, or -1 at the end of the stream.
+     */
+    default int peek(byte[] b, int off, int len) throws IOException {
+        final int read = read(b, off, len);
+        if (read > 0) {
+            unread(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * The bytes read so far will not be given back, the source may drop them.
+     */
+    default void mark() {
+    }
+
+    void close() throws IOException;
+
+    /**
+     * Goes to the byte at the position, counted from the start of the file.
+     *
+     * @throws IOException If the source cannot go back or forth, as a stream.
+     */
+    default void seek(long position) throws IOException {
+        throw new IOException("The source cannot seek.");
+    }
+
+    /**
+     * @return The position of the next byte read, counted from the start of
+     * the file, or -1 if the source does not know it.
+     */
+    default long position() {
+        return -1;
+    }
+}
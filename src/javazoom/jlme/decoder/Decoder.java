@@ -20,14 +20,22 @@
  */
 package javazoom.jlme.decoder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
 
 public class Decoder {
   private SampleBuffer output;
   private SynthesisFilter filter1;
   private SynthesisFilter filter2;
   private LayerIIIDecoder decoder;
+  private BitStream stream;
   private int outputFrequency;
   private int outputChannels;
+  // the samples of a frame at most, of all channels
+  private int frameSamples;
+  private ShortSampleBuffer shortOutput;
+  private FloatSampleBuffer floatOutput;
   private boolean initialized;
 
   /**
@@ -37,25 +45,48 @@ public class Decoder {
    * @param stream Description of Parameter
    */
   public Decoder(Header header, BitStream stream) {
-    // E.B Fix - Damned unloaded static fields !
-    BitReserve.totbit = 0;
-    BitReserve.buf_bit_idx = 0;
-    BitReserve.buf_byte_idx = 0;
-    BitReserve.offset = 0;
-    // End of fix.
+    this(header, stream, OutputChannels.BOTH_CHANNELS);
+  }
+
+  /**
+   * Constructor for a Decoder with one channel of output for a stereo
+   * stream: the left one, the right one, or the mix of both. The mix goes
+   * through a single synthesis filter, as a single channel stream.
+   *
+   * @param header   The header of the first frame.
+   * @param stream   The stream of the frames.
+   * @param channels The channels wanted, one of {@link OutputChannels}.
+   */
+  public Decoder(Header header, BitStream stream, int channels) {
+    this(header, stream, channels, OutputRate.FULL_RATE);
+  }
+
+  /**
+   * Constructor for a Decoder with a reduced output rate: only the lowest
+   * subbands are decoded, and the synthesis filters give one sample out of
+   * two or four. The rate of the output is given by getOutputFrequency.
+   *
+   * @param header   The header of the first frame.
+   * @param stream   The stream of the frames.
+   * @param channels The channels wanted, one of {@link OutputChannels}.
+   * @param rate     The divisor of the rate of the stream, one of {@link OutputRate}.
+   */
+  public Decoder(Header header, BitStream stream, int channels, int rate) {
     if (header.getLayer() == Layer.LAYER3) {
       //float scalefactor = 48000.0f;
       float scalefactor = 32700.0f;
       int mode = header.mode();
-      int channels = mode == Header.SINGLE_CHANNEL ? 1 : 2;
-      output = new SampleBuffer(header.frequency(), channels);
-      filter1 = new SynthesisFilter(0, scalefactor);
-      if (channels == 2) {
-        filter2 = new SynthesisFilter(1, scalefactor);
+      int outputs = (mode == Header.SINGLE_CHANNEL || channels != OutputChannels.BOTH_CHANNELS) ? 1 : 2;
+      output = new SampleBuffer(header.frequency() / rate, outputs, SampleBuffer.OBUFFERSIZE / rate);
+      filter1 = new SynthesisFilter(0, scalefactor, rate);
+      if (outputs == 2) {
+        filter2 = new SynthesisFilter(1, scalefactor, rate);
       }
-      outputChannels = channels;
-      outputFrequency = header.frequency();
-      decoder = new LayerIIIDecoder(stream, header, filter1, filter2, output, OutputChannels.BOTH_CHANNELS);
+      outputChannels = outputs;
+      outputFrequency = header.frequency() / rate;
+      frameSamples = ((header.version() == Header.MPEG1) ? 1152 : 576) / rate * outputs;
+      decoder = new LayerIIIDecoder(stream, header, filter1, filter2, output, channels, rate);
+      this.stream = stream;
     } else {
       System.out.println("only supports mp3 files");
       System.exit(1);
@@ -63,16 +94,19 @@ public class Decoder {
   }
 
   /**
-   * Sets the outputBuffer attribute of the Decoder object
+   * Sets the outputBuffer attribute of the Decoder object, for the next
+   * frames. A {@link FloatSampleBuffer} gets the samples as floats.
    *
-   * @param out The new outputBuffer value
+   * @param out The new outputBuffer value, with the channels and the rate of the output.
    */
   public final void setOutputBuffer(SampleBuffer out) {
     output = out;
+    decoder.setOutputBuffer(out);
   }
 
   /**
-   * Gets the outputFrequency attribute of the Decoder object
+   * Gets the outputFrequency attribute of the Decoder object, the rate of
+   * the stream divided by the {@link OutputRate} of the decoder.
    *
    * @return The outputFrequency value
    */
@@ -89,13 +123,20 @@ public class Decoder {
     return outputChannels;
   }
 
+  /**
+   * @return The samples of a frame at most, of all channels, at the output rate.
+   */
+  public final int getFrameSampleCount() {
+    return frameSamples;
+  }
+
   /**
    * Gets the outputBlockSize attribute of the Decoder object
    *
    * @return The outputBlockSize value
    */
   public final int getOutputBlockSize() {
-    return output.OBUFFERSIZE;
+    return output.getBuffer().length;
   }
 
   /**
@@ -108,4 +149,198 @@ public class Decoder {
     decoder.decodeFrame();
     return output;
   }
+
+  /**
+   * Decodes the next frames into an array of the caller, as many as fit, up
+   * to <code>maxFrames</code>. The samples are written as the ones of a
+   * {@link SampleBuffer}, 16 bits with the channels interleaved, without
+   * a copy. The frames are read from the stream and closed: a frame read
+   * before and not decoded yet, as the first one, is decoded first.
+   *
+   * @param dst       The samples.
+   * @param offset    The index of the first sample written.
+   * @param maxFrames The frames decoded at most.
+   * @return The number of samples written, of all channels, or -1 if the
+   * stream has ended.
+   * @throws IOException If the stream cannot be read.
+   * @throws IllegalArgumentException If the samples from the offset cannot
+   * hold a frame, {@link #getFrameSampleCount()}, and maxFrames is not 0.
+   */
+  public final int decode(short[] dst, int offset, int maxFrames) throws IOException {
+    return decode(ShortBuffer.wrap(dst), offset, dst.length - offset, maxFrames);
+  }
+
+  /**
+   * Decodes the next frames into a buffer of the caller, as many as fit from
+   * its position, up to <code>maxFrames</code>, as
+   * {@link #decode(short[], int, int)}. The samples are written in the byte
+   * order of the buffer, which may be direct, and the position is moved
+   * after them.
+   *
+   * @param dst       The samples.
+   * @param maxFrames The frames decoded at most.
+   * @return The number of bytes written, or -1 if the stream has ended.
+   * @throws IOException If the stream cannot be read.
+   * @throws IllegalArgumentException If the bytes remaining cannot hold a
+   * frame, twice {@link #getFrameSampleCount()}, and maxFrames is not 0.
+   */
+  public final int decode(ByteBuffer dst, int maxFrames) throws IOException {
+    final ShortBuffer shorts = dst.asShortBuffer();
+    final int samples = decode(shorts, 0, shorts.remaining(), maxFrames);
+    if (samples > 0) {
+      dst.position(dst.position() + 2 * samples);
+    }
+    return samples < 0 ? -1 : 2 * samples;
+  }
+
+  /**
+   * Decodes the next frames into an array of the caller, as many as fit, up
+   * to <code>maxFrames</code>, as {@link #decode(short[], int, int)}. The
+   * samples are the floats of a {@link FloatSampleBuffer}, interleaved.
+   *
+   * @param dst       The samples.
+   * @param offset    The index of the first sample written.
+   * @param maxFrames The frames decoded at most.
+   * @return The number of samples written, of all channels, or -1 if the
+   * stream has ended.
+   * @throws IOException If the stream cannot be read.
+   * @throws IllegalArgumentException If the samples from the offset cannot
+   * hold a frame, {@link #getFrameSampleCount()}, and maxFrames is not 0.
+   */
+  public final int decode(float[] dst, int offset, int maxFrames) throws IOException {
+    if (floatOutput == null) {
+      floatOutput = new FloatSampleBuffer(outputFrequency, outputChannels, false);
+    }
+    floatOutput.wrap(dst, offset);
+    final int frames = decodeFrames(floatOutput, dst.length - offset, maxFrames);
+    return frames < 0 ? -1 : floatOutput.getSampleCount() * outputChannels;
+  }
+
+  private int decode(ShortBuffer dst, int offset, int length, int maxFrames) throws IOException {
+    if (shortOutput == null) {
+      shortOutput = new ShortSampleBuffer(outputFrequency, outputChannels);
+    }
+    shortOutput.wrap(dst, offset);
+    final int frames = decodeFrames(shortOutput, length, maxFrames);
+    return frames < 0 ? -1 : shortOutput.getSampleCount() * outputChannels;
+  }
+
+  /**
+   * Skips the next frames without decoding them, up to
+   * <code>maxFrames</code>, reading and closing them as
+   * {@link #decode(short[], int, int)}. Their main data still fills the bit
+   * reservoir, so the frames after them can be decoded. The overlap of the
+   * filter banks is restored by the next frame decoded, whose own samples
+   * differ from the ones of a decoding from the start: decode and drop a
+   * frame before the samples wanted.
+   *
+   * @param maxFrames The frames skipped at most.
+   * @return The number of samples the frames would have given, of all
+   * channels, or -1 if the stream has ended.
+   * @throws IOException If the stream cannot be read.
+   */
+  public final long skipFrames(int maxFrames) throws IOException {
+    long samples = 0;
+    for (int frames = 0; frames < maxFrames; frames++) {
+      if (!stream.isFrameOpen() && stream.readFrame() == null) {
+        return frames == 0 ? -1 : samples;
+      }
+      if (decoder.skipFrame()) {
+        samples += frameSamples;
+      }
+      stream.closeFrame();
+    }
+    return samples;
+  }
+
+  /**
+   * Decodes frames into a buffer over the memory of the caller, while a
+   * whole frame fits in the samples left. The output buffer of the decoder
+   * is set back after.
+   *
+   * @param length The samples the buffer can hold, of all channels.
+   * @return The number of frames decoded, or -1 if the stream has ended
+   * before the first one.
+   * @throws IllegalArgumentException If the buffer cannot hold a frame, a
+   * caller looping until -1 would never get it.
+   */
+  private int decodeFrames(SampleBuffer buffer, int length, int maxFrames) throws IOException {
+    if (maxFrames > 0 && length < frameSamples) {
+      throw new IllegalArgumentException("The destination holds " + length + " samples, a frame has " + frameSamples + ".");
+    }
+    decoder.setOutputBuffer(buffer);
+    int frames = 0;
+    try {
+      for (int left = length; frames < maxFrames && left >= frameSamples; left -= frameSamples) {
+        if (!stream.isFrameOpen() && stream.readFrame() == null) {
+          return frames == 0 ? -1 : frames;
+        }
+        decoder.decodeFrame();
+        stream.closeFrame();
+        frames++;
+      }
+    } finally {
+      decoder.setOutputBuffer(output);
+    }
+    return frames;
+  }
+
+  /**
+   * Goes to the frame holding a sample, for a stream read from a file. The
+   * frames given by {@link FrameIndex#getPrimingFrame(int)} are read for
+   * their main data and scale factors, without decoding them, and the frame
+   * before it is decoded and its output dropped, so the frame decodes as in
+   * a decoding from the start.
+   * Call it between closeFrame and readFrame of the stream, the next
+   * readFrame reads the frame found.
+   *
+   * @param index The frame index of the file.
+   * @param sampleOffset The sample wanted, per channel, at the rate of the stream.
+   * @return The sample offset of the first sample of the frame, at or before the sample wanted.
+   * @throws IOException If the stream cannot seek.
+   */
+  public final long seek(FrameIndex index, long sampleOffset) throws IOException {
+    final int frame = index.getFrameForSample(sampleOffset);
+    final int first = index.getPrimingFrame(frame);
+    stream.seek(index.getByteOffset(first));
+    decoder.reset();
+    filter1.reset();
+    if (filter2 != null) {
+      filter2.reset();
+    }
+    for (int i = first; i < frame; i++) {
+      if (stream.readFrame() == null) {
+        break;
+      }
+      if (i < frame - 1) {
+        decoder.skipFrame();
+      } else {
+        decodeFrame();
+      }
+      stream.closeFrame();
+    }
+    output.clear();
+    return index.getSampleOffset(frame);
+  }
+
+  /**
+   * Goes near the frame holding a sample with the table of contents of the
+   * VBR header, without a scan of the file. The position is approximate,
+   * the stream syncs on the next frame, and the first frames after it may
+   * be silent until the bit reservoir is filled again.
+   *
+   * @param vbr The header of the first frame of the stream.
+   * @param sampleOffset The sample wanted, per channel, at the rate of the stream.
+   * @throws IOException If the stream cannot seek.
+   * @throws IllegalStateException If the header has no table of contents.
+   */
+  public final void seek(VbrHeader vbr, long sampleOffset) throws IOException {
+    stream.seek(vbr.getByteOffset(sampleOffset));
+    decoder.reset();
+    filter1.reset();
+    if (filter2 != null) {
+      filter2.reset();
+    }
+    output.clear();
+  }
 }
@@ -0,0 +1,90 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Decodes an MPEG stream pushed in chunks of any size, for example from a
+ * NIO selector or the completion handler of an AsynchronousFileChannel, so
+ * no thread blocks waiting for the input.
+ * <p>
+ * Each call to {@link #feed(ByteBuffer)} decodes every frame completed by
+ * the chunk and hands its PCM to the sink. A partial frame is kept until the
+ * next chunk, and the bit reservoir is kept between frames as in
+ * {@link Decoder}. A frame is decoded once the header of the next one has
+ * arrived, or when {@link #finish()} says that no more bytes will come.
+ * <p>
+ * A FeedDecoder is not thread safe, the chunks of a stream must be pushed
+ * one at a time.
+ */
+public final class FeedDecoder {
+
+    private final FeedSource source = new FeedSource();
+    private final BitStream stream = new BitStream(source);
+    private final Consumer<SampleBuffer> sink;
+    private Decoder decoder;
+
+    /**
+     * @param sink Receives the PCM of every frame. The buffer is reused for
+     *             the next frame, its bytes must be copied or consumed before
+     *             the sink returns.
+     */
+    public FeedDecoder(Consumer<SampleBuffer> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Decodes the frames completed by the remaining bytes of data. The bytes
+     * are copied, so the buffer can be reused once this method returns.
+     *
+     * @throws IOException If the decoder has been finished.
+     */
+    public void feed(ByteBuffer data) throws IOException {
+        if (source.isFinished()) {
+            throw new IOException("The decoder has been finished.");
+        }
+        source.append(data);
+        decodeFrames();
+    }
+
+    /**
+     * Decodes the frames left, the last one does not wait for a next header.
+     */
+    public void finish() throws IOException {
+        if (!source.isFinished()) {
+            source.finish();
+            decodeFrames();
+        }
+    }
+
+    /**
+     * @return The decoder of the frames, null until the first frame has been read.
+     */
+    public Decoder getDecoder() {
+        return decoder;
+    }
+
+    private void decodeFrames() throws IOException {
+        while (true) {
+            source.mark();
+            final Header header;
+            try {
+                header = stream.readFrame();
+            } catch (FeedSource.Underflow e) {
+                // the frame, or the piece of the tag, is read again from its
+                // start with the next chunk
+                source.reset();
+                return;
+            }
+            if (header == null) {
+                return;
+            }
+            if (decoder == null) {
+                decoder = new Decoder(header, stream);
+            }
+            sink.accept(decoder.decodeFrame());
+            stream.closeFrame();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The bytes pushed to a {@link FeedDecoder}. A read past the bytes received
+ * so far throws {@link #UNDERFLOW}, so the frame being read can be given up
+ * with {@link #reset()} and read again once more bytes have been pushed.
+ * After {@link #finish()} such a read returns what is left, as at the end of
+ * a stream.
+ */
+final class FeedSource implements ByteSource {
+
+    /**
+     * Thrown by read when the bytes received so far are not enough. It is
+     * unchecked, as IOException cannot disable the suppressed exceptions:
+     * the one instance is shared by all the decoders, on all threads, and is
+     * always caught by {@link FeedDecoder}.
+     */
+    static final class Underflow extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Underflow() {
+            // thrown on every partial frame, the stack trace is never used
+            super("More bytes are needed.", null, false, false);
+        }
+    }
+
+    static final Underflow UNDERFLOW = new Underflow();
+
+    private byte[] buf = new byte[4096];
+    // first byte kept, the position of the last mark
+    private int start;
+    private int pos;
+    private int limit;
+    private boolean finished;
+
+    /**
+     * Appends the remaining bytes of data, dropping the bytes before the mark.
+     */
+    void append(ByteBuffer data) {
+        final int length = data.remaining();
+        if (limit + length > buf.length) {
+            final int kept = limit - start;
+            if (kept + length > buf.length) {
+                final byte[] larger = new byte[Math.max(buf.length << 1, kept + length)];
+                System.arraycopy(buf, start, larger, 0, kept);
+                buf = larger;
+            } else {
+                System.arraycopy(buf, start, buf, 0, kept);
+            }
+            pos -= start;
+            limit = kept;
+            start = 0;
+        }
+        data.get(buf, limit, length);
+        limit += length;
+    }
+
+    /**
+     * No more bytes will be appended.
+     */
+    void finish() {
+        finished = true;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Remembers the position, the bytes from it on are kept until the next mark.
+     */
+    @Override
+    public void mark() {
+        start = pos;
+    }
+
+    /**
+     * Goes back to the position of the last mark.
+     */
+    void reset() {
+        pos = start;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int avail = limit - pos;
+        if (avail < len) {
+            if (!finished) {
+                throw UNDERFLOW;
+            }
+            if (avail == 0) {
+                return len == 0 ? 0 : -1;
+            }
+            len = avail;
+        }
+        System.arraycopy(buf, pos, b, off, len);
+        pos += len;
+        return len;
+    }
+
+    @Override
+    public void unread(byte[] b, int off, int len) {
+        pos -= len;
+    }
+
+    @Override
+    public void close() {
+        buf = null;
+    }
+}
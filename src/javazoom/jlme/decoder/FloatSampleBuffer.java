@@ -0,0 +1,84 @@
+package javazoom.jlme.decoder;
+
+
+/**
+ * A {@link SampleBuffer} of floats: the synthesis filters write the windowed
+ * samples as they are, without the scale to 16 bits, the clipping and the
+ * packing into bytes. The full scale is 1.0, the samples may be above it.
+ * The byte buffer of the super class is empty.
+ * <p>
+ * The samples of the channels are either interleaved, as the bytes of the
+ * 16 bit output, or planar: all the samples of the first channel, then all
+ * the ones of the second channel at {@link #MAXSAMPLES}.
+ * <p>
+ * Set it with {@link Decoder#setOutputBuffer(SampleBuffer)}.
+ */
+public class FloatSampleBuffer extends SampleBuffer {
+    /**
+     * The samples of a frame, per channel, at most.
+     */
+    public final static int MAXSAMPLES = 1152;
+    private float[] samples = new float[MAXCHANNELS * MAXSAMPLES];
+    private final int[] samplep = new int[MAXCHANNELS];
+    // the index of the first sample, in the array of the caller
+    private int start;
+    private final boolean planar;
+    // the distance between two samples of a channel
+    private final int stride;
+
+    public FloatSampleBuffer(int sample_frequency, int number_of_channels, boolean planar) {
+        super(sample_frequency, number_of_channels, 0);
+        this.planar = planar;
+        stride = planar ? 1 : getChannelCount();
+        clear();
+    }
+
+    /**
+     * @return The samples, of all channels.
+     */
+    public float[] getFloatBuffer() {
+        return samples;
+    }
+
+    /**
+     * @return True if the channels follow each other, false if interleaved.
+     */
+    public boolean isPlanar() {
+        return planar;
+    }
+
+    /**
+     * @return The samples written per channel.
+     */
+    public int getSampleCount() {
+        return (samplep[0] - start) / stride;
+    }
+
+    public void clear() {
+        super.clear();
+        samplep[0] = start;
+        samplep[1] = start + (planar ? MAXSAMPLES : 1);
+    }
+
+    /**
+     * Writes the next samples to an array of the caller, interleaved, from
+     * an index, for {@link Decoder#decode(float[], int, int)}.
+     */
+    final void wrap(float[] dst, int offset) {
+        samples = dst;
+        start = offset;
+        clear();
+    }
+
+    /**
+     * Writes samples of a channel after the last ones.
+     */
+    final void append(int channel, float[] sum, int count) {
+        int pos = samplep[channel];
+        for (int i = 0; i < count; i++) {
+            samples[pos] = sum[i];
+            pos += stride;
+        }
+        samplep[channel] = pos;
+    }
+}
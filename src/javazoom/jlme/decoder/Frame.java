@@ -1,7 +1,11 @@
 package javazoom.jlme.decoder;
 
+import javazoom.jlme.tag.TagReader;
+
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Many computer users know that an MP3 are made up of several “frames”,
@@ -78,7 +82,7 @@ public class Frame extends AbstractFrame {
         // Convert the value of kHz to hz.
         bitrate = getBitRateIndex(headerString) * 1_000;
         // Convert the value of kHz to hz.
-        sampleFrequency = (int) getSamplingFrequency(headerString) * 1_000;
+        sampleFrequency = Math.round(getSamplingFrequency(headerString) * 1_000);
         paddingBit = isPaddingBit(headerString);
         mode = getMode(headerString);
 
@@ -102,6 +106,31 @@ public class Frame extends AbstractFrame {
         assert buffer.read(dataFrame, 0, sizeOfDataFrame) == sizeOfDataFrame;
     }
 
+    /**
+     * Reads the ID3v2 tag and then every frame of the file. The decoder does
+     * not need this, it is only for the callers that want the details of each
+     * frame, and it holds all the bytes of the file.
+     *
+     * @param buffer Buffer of bytes, that store the bytes of audio file.
+     * @return The frames of the file, in order.
+     * @throws IOException If not is possible access to file or is produced
+     *                     an error of read.
+     */
+    public static List<Frame> readFrames(BufferedInputStream buffer) throws IOException {
+        // Read the ID3 tag, the object read all bytes
+        // of ID3 tag and left to buffer with the bytes
+        // of frames audio.
+        new TagReader(buffer);
+        ArrayList<Frame> frames = new ArrayList<>();
+        // Like the size of each frame is determine for
+        // itself, is important read bytes to that it reach
+        // the final of file.
+        while (buffer.available() > 0) {
+            frames.add(new Frame(buffer));
+        }
+        return frames;
+    }
+
     /**
      * All MP3 files are divided into smaller fragments called frames. Each
      * frame stores 1152 audio samples and lasts for 26 ms. This means that the
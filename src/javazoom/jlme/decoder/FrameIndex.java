@@ -0,0 +1,331 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The byte offset, sample offset and main_data_begin of every frame of a
+ * file, so the decoder can go straight to any frame with
+ * {@link Decoder#seek(FrameIndex, long)}.
+ * <p>
+ * The index is built by reading only the four bytes of each header, plus
+ * the side information, and stepping over the frames with their length. It can be saved in a sidecar
+ * file, which {@link #load(Path)} maps in memory instead of reading it.
+ * <p>
+ * The sidecar file holds, in big endian order: the magic number, the
+ * version of the format, the samples per frame, the number of frames, the
+ * offset of the end of the last frame, then the offset of each frame as an
+ * int, then the first frame to read for a seek to each frame as an int,
+ * see {@link #getPrimingFrame(int)}, then for each frame a short with
+ * main_data_begin in the low 9 bits, the bits 9 and 10 set if the frame sets
+ * all the scale factors of the long blocks of the first or second channel,
+ * the bits 11 and 12 the same for the short blocks, the bit 14 set if the
+ * file is single channel and the bit 15 set if the frame has a CRC.
+ *
+ * @apiNote Only support to MPEG 1 Layer 3.
+ */
+public final class FrameIndex {
+
+    /**
+     * "JLFI", the first four bytes of a sidecar file.
+     */
+    private static final int MAGIC = 0x4A4C4649;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 20;
+    private static final int CRC_FLAG = 0x8000;
+    private static final int MONO_FLAG = 0x4000;
+    /**
+     * The frame sets all the scale factors of the long blocks of the first
+     * channel, shifted by one for the second channel. A granule with short
+     * blocks keeps the ones of the last granule with long blocks, and the
+     * other way round, so they can come from any frame before.
+     */
+    private static final int LONG_FLAG = 0x0200;
+    /**
+     * The frame sets all the scale factors of the short blocks of the first
+     * channel, shifted by one for the second channel.
+     */
+    private static final int SHORT_FLAG = 0x0800;
+    private static final int SAMPLES_PER_FRAME = 1152;
+
+    private final int samplesPerFrame;
+    private final int frameCount;
+    private final IntBuffer offsets;
+    private final IntBuffer primings;
+    private final ShortBuffer sides;
+    private final int end;
+    /**
+     * Header plus side information, the bytes of a frame that are not main data.
+     */
+    private final int overhead;
+
+    private FrameIndex(int samplesPerFrame, int frameCount, int end, IntBuffer offsets, IntBuffer primings,
+                       ShortBuffer sides) {
+        this.samplesPerFrame = samplesPerFrame;
+        this.frameCount = frameCount;
+        this.end = end;
+        this.offsets = offsets;
+        this.primings = primings;
+        this.sides = sides;
+        // every frame of a file has the same number of channels
+        overhead = 4 + ((sides.get(0) & MONO_FLAG) != 0 ? 17 : 32);
+    }
+
+    /**
+     * Scans the headers of a file.
+     *
+     * @param file The MP3 file.
+     * @throws IOException If the file cannot be read, or it has no MPEG 1 Layer 3 frame.
+     */
+    public static FrameIndex build(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The file is too large to be mapped: " + file);
+            }
+            return build(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Scans the headers of a whole file held in data, from its position to
+     * its limit. The offsets are counted from the position.
+     *
+     * @throws IOException If no MPEG 1 Layer 3 frame is found.
+     */
+    public static FrameIndex build(ByteBuffer data) throws IOException {
+        final HeaderScanner scanner = new HeaderScanner(data);
+        // the shortest frame is 96 bytes, 32 kbit/s at 48 kHz
+        final int maxFrames = scanner.data().limit() / 96 + 1;
+        final IntBuffer offsets = IntBuffer.allocate(maxFrames);
+        final ShortBuffer sides = ShortBuffer.allocate(maxFrames);
+        final ByteBuffer bytes = scanner.data();
+        int end = 0;
+        int pos;
+        while ((pos = scanner.next()) >= 0) {
+            final int header = scanner.header();
+            final boolean crc = scanner.isRedundancyAdded(header);
+            final int side = pos + 4 + (crc ? 2 : 0);
+            int mainDataBegin = 0;
+            if (side + 2 <= bytes.limit()) {
+                mainDataBegin = (bytes.getShort(side) & 0xFFFF) >>> 7;
+            }
+            final boolean mono = scanner.getMode(header) == Mode.SINGLE_CHANNEL;
+            offsets.put(pos);
+            sides.put((short) (mainDataBegin | (crc ? CRC_FLAG : 0) | (mono ? MONO_FLAG : 0)
+                    | getScaleFactorFlags(bytes, side, mono)));
+            end = Math.min(pos + scanner.length(), bytes.limit());
+        }
+        final int frameCount = offsets.position();
+        if (frameCount == 0) {
+            throw new IOException("No MPEG 1 Layer 3 frame found.");
+        }
+        offsets.flip();
+        sides.flip();
+        final FrameIndex index = new FrameIndex(SAMPLES_PER_FRAME, frameCount, end, offsets.slice(),
+                IntBuffer.allocate(frameCount), sides.slice());
+        index.findPrimingFrames();
+        return index;
+    }
+
+    /**
+     * Finds the priming frame of every frame in one pass, keeping the last
+     * frame that set each kind of scale factors as the frames go, so a
+     * seek does not scan the index.
+     */
+    private void findPrimingFrames() {
+        final int all = (sides.get(0) & MONO_FLAG) != 0 ? LONG_FLAG | SHORT_FLAG
+                : (LONG_FLAG | SHORT_FLAG) * 3;
+        // by bit of the flags, the last frame setting it, -1 for none
+        final int[] lastSet = new int[16];
+        Arrays.fill(lastSet, -1);
+        primings.put(0, 0);
+        for (int frame = 1; frame < frameCount; frame++) {
+            int first = frame - 1;
+            // the scale factors at the start of the frame before, which may
+            // use them before setting them
+            if (frame >= 2) {
+                final int set = sides.get(frame - 2) & all;
+                for (int bit = 0; bit < 16; bit++) {
+                    if ((set & (1 << bit)) != 0) {
+                        lastSet[bit] = frame - 2;
+                    }
+                }
+            }
+            for (int bit = 0; bit < 16; bit++) {
+                if (lastSet[bit] >= 0) {
+                    first = Math.min(first, lastSet[bit]);
+                }
+            }
+            int needed = getMainDataBegin(first);
+            while (first > 0 && needed > 0) {
+                first--;
+                needed -= getMainDataLength(first);
+            }
+            primings.put(frame, first);
+        }
+    }
+
+    /**
+     * Reads the block types of the side information: the first granule with
+     * long blocks reads all their scale factors, a granule with short blocks,
+     * not mixed, reads all theirs.
+     *
+     * @param side The offset of the side information of the frame.
+     * @return The {@link #LONG_FLAG} and {@link #SHORT_FLAG} of the channels.
+     */
+    private static int getScaleFactorFlags(ByteBuffer bytes, int side, boolean mono) {
+        // main_data_begin, private_bits and scfsi, then 59 bits per granule and channel
+        final int first = mono ? 18 : 20;
+        final int channels = mono ? 1 : 2;
+        if (side + (first + 59 * 2 * channels + 7) / 8 > bytes.limit()) {
+            return 0;
+        }
+        int flags = 0;
+        for (int gr = 0; gr < 2; gr++) {
+            for (int ch = 0; ch < channels; ch++) {
+                // window_switching_flag, block_type and mixed_block_flag, after
+                // part2_3_length, big_values, global_gain and scalefac_compress
+                final int bit = first + 59 * (gr * channels + ch) + 33;
+                final int bits = ((bytes.get(side + bit / 8) & 0xFF) << 8 | (bytes.get(side + bit / 8 + 1) & 0xFF))
+                        >>> (12 - bit % 8);
+                final boolean shortBlocks = (bits & 8) != 0 && ((bits >>> 1) & 3) == 2;
+                if (shortBlocks && (bits & 1) == 0) {
+                    flags |= SHORT_FLAG << ch;
+                } else if (!shortBlocks && gr == 0) {
+                    flags |= LONG_FLAG << ch;
+                }
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Maps a sidecar file written by {@link #save(Path)}.
+     *
+     * @throws IOException If the file cannot be mapped or is not an index.
+     */
+    public static FrameIndex load(Path sidecar) throws IOException {
+        final ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not is a frame index: " + sidecar);
+        }
+        final int samplesPerFrame = data.getInt(8);
+        final int frameCount = data.getInt(12);
+        final int end = data.getInt(16);
+        if (frameCount <= 0 || data.limit() != HEADER_SIZE + frameCount * 10) {
+            throw new IOException("The frame index is truncated: " + sidecar);
+        }
+        data.position(HEADER_SIZE);
+        final IntBuffer offsets = data.slice().asIntBuffer();
+        offsets.limit(frameCount);
+        data.position(HEADER_SIZE + frameCount * 4);
+        final IntBuffer primings = data.slice().asIntBuffer();
+        primings.limit(frameCount);
+        data.position(HEADER_SIZE + frameCount * 8);
+        final ShortBuffer sides = data.slice().asShortBuffer();
+        return new FrameIndex(samplesPerFrame, frameCount, end, offsets, primings, sides);
+    }
+
+    /**
+     * Writes the index in a sidecar file, replacing it if it exists.
+     */
+    public void save(Path sidecar) throws IOException {
+        final ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + frameCount * 10);
+        data.putInt(MAGIC).putInt(VERSION).putInt(samplesPerFrame).putInt(frameCount).putInt(end);
+        for (int i = 0; i < frameCount; i++) {
+            data.putInt(offsets.get(i));
+        }
+        for (int i = 0; i < frameCount; i++) {
+            data.putInt(primings.get(i));
+        }
+        for (int i = 0; i < frameCount; i++) {
+            data.putShort(sides.get(i));
+        }
+        data.flip();
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    /**
+     * @return The number of samples per channel of the file.
+     */
+    public long getSampleCount() {
+        return (long) frameCount * samplesPerFrame;
+    }
+
+    /**
+     * @return The offset in the file of the header of the frame.
+     */
+    public long getByteOffset(int frame) {
+        return offsets.get(frame) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return The offset of the first sample of the frame, per channel.
+     */
+    public long getSampleOffset(int frame) {
+        return (long) frame * samplesPerFrame;
+    }
+
+    /**
+     * @return How many bytes before the frame its main data begins.
+     */
+    public int getMainDataBegin(int frame) {
+        return sides.get(frame) & 0x1FF;
+    }
+
+    /**
+     * @return The frame holding the sample, the last frame for a sample past the end.
+     */
+    public int getFrameForSample(long sampleOffset) {
+        if (sampleOffset <= 0) {
+            return 0;
+        }
+        return (int) Math.min(sampleOffset / samplesPerFrame, frameCount - 1);
+    }
+
+    /**
+     * The first frame to read so that the frame is decoded as in a decoding
+     * from the start: the frame before it must be decoded in full for the
+     * overlap of the hybrid filter bank, the scale factors must be read from
+     * the last frames that set all of them, the ones never set are zero, and
+     * the bit reservoir must hold the main_data_begin bytes of the first
+     * frame read. It is found once for all the frames when the index is
+     * built.
+     *
+     * @return The frame to start reading from.
+     */
+    public int getPrimingFrame(int frame) {
+        return primings.get(frame);
+    }
+
+    /**
+     * @return The bytes of main data carried by the frame.
+     */
+    public int getMainDataLength(int frame) {
+        final long next = frame + 1 < frameCount ? getByteOffset(frame + 1) : end & 0xFFFFFFFFL;
+        final int length = (int) (next - getByteOffset(frame));
+        return length - overhead - ((sides.get(frame) & CRC_FLAG) != 0 ? 2 : 0);
+    }
+}
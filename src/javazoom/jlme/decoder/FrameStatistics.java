@@ -0,0 +1,183 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The statistics of the frames of a file, gathered from their headers only:
+ * the file is mapped in memory and the scan jumps from header to header
+ * with the length of each frame, the audio is never decoded.
+ *
+ * @apiNote Only support to MPEG 1 Layer 3.
+ */
+public final class FrameStatistics {
+
+    private static final int SAMPLES_PER_FRAME = 1152;
+
+    private int frameCount;
+    private int sampleRate;
+    private long byteCount;
+    private int minBitrate = Integer.MAX_VALUE;
+    private int maxBitrate;
+    private Mode mode;
+    private int modeChanges;
+    private int crcFrameCount;
+    private int paddedFrameCount;
+
+    private FrameStatistics() {
+    }
+
+    /**
+     * Scans the headers of a file.
+     *
+     * @param file The MP3 file.
+     * @throws IOException If the file cannot be read, or it has no MPEG 1 Layer 3 frame.
+     */
+    public static FrameStatistics scan(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The file is too large to be mapped: " + file);
+            }
+            return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Scans the headers of a whole file held in data, from its position to its limit.
+     *
+     * @throws IOException If no MPEG 1 Layer 3 frame is found.
+     */
+    public static FrameStatistics scan(ByteBuffer data) throws IOException {
+        final HeaderScanner scanner = new HeaderScanner(data);
+        final FrameStatistics statistics = new FrameStatistics();
+        Mode previous = null;
+        while (scanner.next() >= 0) {
+            final int header = scanner.header();
+            final int bitrate = scanner.getBitRateIndex(header);
+            final Mode mode = scanner.getMode(header);
+            if (previous == null) {
+                statistics.mode = mode;
+                statistics.sampleRate = Math.round(scanner.getSamplingFrequency(header) * 1_000);
+            } else if (mode != previous) {
+                statistics.modeChanges++;
+            }
+            previous = mode;
+            if (bitrate < statistics.minBitrate) {
+                statistics.minBitrate = bitrate;
+            }
+            if (bitrate > statistics.maxBitrate) {
+                statistics.maxBitrate = bitrate;
+            }
+            if (scanner.isRedundancyAdded(header)) {
+                statistics.crcFrameCount++;
+            }
+            if (scanner.isPaddingBit(header)) {
+                statistics.paddedFrameCount++;
+            }
+            statistics.byteCount += scanner.length();
+            statistics.frameCount++;
+        }
+        if (statistics.frameCount == 0) {
+            throw new IOException("No MPEG 1 Layer 3 frame found.");
+        }
+        return statistics;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return The sampling frequency in hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return The number of samples per channel.
+     */
+    public long getSampleCount() {
+        return (long) frameCount * SAMPLES_PER_FRAME;
+    }
+
+    /**
+     * @return The duration in milliseconds, exact to the frame.
+     */
+    public long getDurationMillis() {
+        return getSampleCount() * 1_000 / sampleRate;
+    }
+
+    /**
+     * @return The bytes of all the frames, headers included.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return The lowest bitrate of a frame in kbit/s.
+     */
+    public int getMinBitrate() {
+        return minBitrate;
+    }
+
+    /**
+     * @return The highest bitrate of a frame in kbit/s.
+     */
+    public int getMaxBitrate() {
+        return maxBitrate;
+    }
+
+    /**
+     * @return The bitrate of the whole file in kbit/s, from its bytes and duration.
+     */
+    public int getAverageBitrate() {
+        return (int) (byteCount * 8 * sampleRate / (getSampleCount() * 1_000));
+    }
+
+    /**
+     * @return True if the bitrate changes between frames.
+     */
+    public boolean isVbr() {
+        return minBitrate != maxBitrate;
+    }
+
+    /**
+     * @return The channel mode of the first frame.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return How many times the channel mode changes from a frame to the next.
+     */
+    public int getModeChanges() {
+        return modeChanges;
+    }
+
+    /**
+     * @return The number of frames protected by a CRC.
+     */
+    public int getCrcFrameCount() {
+        return crcFrameCount;
+    }
+
+    /**
+     * @return The number of frames with the padding byte.
+     */
+    public int getPaddedFrameCount() {
+        return paddedFrameCount;
+    }
+
+    @Override
+    public String toString() {
+        return "frames=" + frameCount + " duration=" + getDurationMillis() + "ms bitrate=" + minBitrate
+                + "/" + getAverageBitrate() + "/" + maxBitrate + " mode=" + mode + " modeChanges=" + modeChanges
+                + " crc=" + crcFrameCount;
+    }
+}
@@ -101,12 +101,12 @@ public final class Header extends AbstractFrame {
      */
     public final static int THIRTYTWO = 2;
 
-    public static int nSlots;
-    private static int h_layer, h_protection_bit, h_bitrate_index, h_padding_bit, h_mode_extension;
-    private static int h_version;
-    private static int h_mode;
-    private static int h_sample_frequency;
-    static byte syncmode = BitStream.INITIAL_SYNC;
+    private int nSlots;
+    private int h_layer, h_protection_bit, h_bitrate_index, h_padding_bit, h_mode_extension;
+    private int h_version;
+    private int h_mode;
+    private int h_sample_frequency;
+    byte syncmode = BitStream.INITIAL_SYNC;
 
 
     public int version() {
@@ -137,28 +137,29 @@ public final class Header extends AbstractFrame {
      * Section 2.4.2.3 Header
      * <p>
      * The first 32 bits (four bytes) are header information which is common to all layers.
+     *
+     * @return False if the end of the stream is reached before a header.
      */
-    final void read_header(BitStream stream) throws IOException {
+    final boolean read_header(BitStream stream) throws IOException {
         int channel_bitrate;
         boolean sync = false;
         do {
             headerstring = stream.findAndReturnSyncHeader(syncmode);
-
-            assert verifySyncWord(headerstring);
-            assert verifyAlgorithm(headerstring);
-            assert verifyPaddingBitFor44SamplingFrequency(headerstring);
+            if (headerstring == -1) {
+                return false;
+            }
 
             layer = getLayerUsed(headerstring);
             // Convert the value of kHz to hz.
             bitrate = getBitRateIndex(headerstring) * 1_000;
             // Convert the value of kHz to hz.
-            sampleFrequency = (int) getSamplingFrequency(headerstring) * 1_000;
+            sampleFrequency = Math.round(getSamplingFrequency(headerstring) * 1_000);
             paddingBit = isPaddingBit(headerstring);
 
             if (syncmode == BitStream.INITIAL_SYNC) {
                 h_version = ((headerstring >>> 19) & 1);
                 if ((h_sample_frequency = ((headerstring >>> 10) & 3)) == 3) {
-                    return;
+                    return true;
                 }
             }
             h_layer = 4 - (headerstring >>> 17) & 3;
@@ -210,16 +211,23 @@ public final class Header extends AbstractFrame {
             determineFrameLengthInBytes();
             // read framedata: Rest the 4 bytes of header
             stream.readFrameData(frameLengthInBytes - 4);
-            if (stream.isSyncCurrentPosition(syncmode)) {
-                if (syncmode == BitStream.INITIAL_SYNC) {
-                    syncmode = BitStream.STRICT_SYNC;
-                    stream.set_syncword(headerstring & 0xFFF80CC0);
-                }
+            if (syncmode == BitStream.INITIAL_SYNC) {
+                // the next header must match this one, as all the headers after the first
+                stream.set_syncword(headerstring & 0xFFF80CC0);
+            }
+            if (stream.isSyncCurrentPosition(BitStream.STRICT_SYNC)) {
+                syncmode = BitStream.STRICT_SYNC;
                 sync = true;
             } else {
                 stream.unreadFrame();
+                stream.unreadSyncHeader(headerstring);
             }
         } while (!sync);
+
+        assert verifySyncWord(headerstring);
+        assert verifyAlgorithm(headerstring);
+        assert verifyPaddingBitFor44SamplingFrequency(headerstring);
+
         stream.parse_frame();
 
         // E.B Fix
@@ -228,6 +236,7 @@ public final class Header extends AbstractFrame {
             short checksum = (short) stream.readbits(16);
         }
         // End
+        return true;
     }
 
     /**
@@ -0,0 +1,119 @@
+package javazoom.jlme.decoder;
+
+import javazoom.jlme.tag.TagReader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Steps over the frames of a whole file held in a buffer, reading only the
+ * four bytes of each header and jumping to the next one with the length of
+ * the frame. The main data is never touched.
+ * <p>
+ * A frame is accepted when the next header follows it, as in the decoder,
+ * except for the last frame. After the first frame only the headers that
+ * match it, with the mask of the decoder, are accepted.
+ *
+ * @apiNote Only support to MPEG 1 Layer 3.
+ */
+final class HeaderScanner extends AbstractFrame {
+
+    private final ByteBuffer data;
+    private final int limit;
+    private int pos;
+    private int header;
+    private int length;
+    private int frameCount;
+    private int syncword;
+    private boolean single_ch_mode;
+
+    /**
+     * @param data The file, from its position to its limit. An ID3v2 tag at
+     *             its start is skipped. The offsets are counted from the position.
+     */
+    HeaderScanner(ByteBuffer data) {
+        this.data = data.slice();
+        this.limit = this.data.limit();
+        this.pos = skipTag();
+    }
+
+    /**
+     * Finds the next frame.
+     *
+     * @return The offset of its header, or -1 at the end of the data.
+     */
+    int next() {
+        while (pos + 4 <= limit) {
+            final int h = data.getInt(pos);
+            if (!isFrameHeader(h)) {
+                pos++;
+                continue;
+            }
+            final int l = getFrameLength(h);
+            if (pos + l + 4 <= limit && !isFrameHeader(data.getInt(pos + l))) {
+                pos++;
+                continue;
+            }
+            if (frameCount++ == 0) {
+                syncword = h & 0xFFF80C00;
+                single_ch_mode = getMode(h) == Mode.SINGLE_CHANNEL;
+            }
+            header = h;
+            length = l;
+            final int offset = pos;
+            pos += l;
+            return offset;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The header of the frame found by {@link #next()}.
+     */
+    int header() {
+        return header;
+    }
+
+    /**
+     * @return The length in bytes of the frame found by {@link #next()}, header included.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return The bytes of the data, from the position it was given with.
+     */
+    ByteBuffer data() {
+        return data;
+    }
+
+    private int skipTag() {
+        if (limit < TagReader.HEADER_SIZE) {
+            return 0;
+        }
+        final byte[] tag = new byte[TagReader.HEADER_SIZE];
+        for (int i = 0; i < tag.length; i++) {
+            tag[i] = data.get(i);
+        }
+        final int tagLength = TagReader.getTagLength(tag);
+        return tagLength < 0 ? 0 : TagReader.HEADER_SIZE + tagLength;
+    }
+
+    /**
+     * Before the first frame any MPEG 1 Layer 3 header, after it only the
+     * headers that match it, with the mask of the decoder.
+     */
+    private boolean isFrameHeader(int h) {
+        if (frameCount > 0) {
+            if ((h & 0xFFF80C00) != syncword || (getMode(h) == Mode.SINGLE_CHANNEL) != single_ch_mode) {
+                return false;
+            }
+        } else if (!verifySyncWord(h) || !verifyAlgorithm(h)) {
+            return false;
+        }
+        final int bitrate = (h >>> 12) & 0xF;
+        return getLayerUsed(h) == Layer.LAYER3
+                && bitrate != 0 && bitrate != 0xF
+                && ((h >>> 10) & 3) != 3;
+    }
+}
@@ -32,10 +32,9 @@ package javazoom.jlme.decoder;
 import java.io.ObjectInputStream;
 
 final class HuffmanTables {
-    public static HuffmanTables[] ht;
     private final static int MXOFF = 250;
     private final static int HTN = 34;
-    private final static int[] bitbuf = new int[32];
+    public final static HuffmanTables[] ht = loadTables();
     private char tablename0 = ' ';
     private char tablename1 = ' ';
     private char tablename2 = ' ';
@@ -46,12 +45,13 @@ final class HuffmanTables {
     private int ref;
     private int[][] val = null;
     private int treelen;
-    private static int dmask = 1 << ((4 * 8) - 1);
-    private static int hs = 4 * 8;
-    private static int point, error, level;
+    // width of the first level of the lookup table
+    private final static int LOOKUP_BITS = 8;
+    private int[] lookup = null;
+    private int lookupbits;
 
     public static class Huffman {
-        static int x, y, v, w;
+        int x, y;
     }
 
     private HuffmanTables(String S, int XLEN, int YLEN, int LINBITS, int LINMAX, int REF, int[][] VAL, int TREELEN) throws Exception {
@@ -65,102 +65,221 @@ final class HuffmanTables {
         ref = REF;
         val = VAL;
         treelen = TREELEN;
+        compile();
     }
 
+    /**
+     * Decodes one pair of values of the big_values region.
+     * The code is resolved through the lookup table of the table, one peek
+     * of at most <code>lookupbits</code> bits plus one more for the long codes.
+     */
     public static void decode(final HuffmanTables h, final Huffman huff, final BitReserve br) {
-        point = 0;
-        level = dmask;
-
-    /*
-    if (h.val == null) {
-      return;
-    }
-
-    if (h.treelen == 0) {
-      huff.x = huff.y = 0;
-      return;
-    }
-    */
-
-        do {
-            if (h.val[point][0] == 0) {
-                huff.x = h.val[point][1] >>> 4;
-                huff.y = h.val[point][1] & 0xf;
-                break;
-            }
+        final int[] lookup = h.lookup;
+        if (lookup == null) {
+            // tables 0, 4 and 14 have no codes, every value is zero
+            huff.x = huff.y = 0;
+            return;
+        }
+        int e = lookup[br.peekbits(h.lookupbits)];
+        if (e < 0) {
+            br.flushbits(h.lookupbits);
+            e = lookup[(e & 0xffff) + br.peekbits((e >>> 16) & 0x1f)];
+        }
+        br.flushbits(e >>> 8);
+        huff.x = (e >>> 4) & 0xf;
+        huff.y = e & 0xf;
 
-            int[][] temp = h.val;
-            if (br.hget1bit() != 0) {
-                while (temp[point][1] >= MXOFF) {
-                    point += temp[point][1];
-                }
-                point += temp[point][1];
-            } else {
-                while (temp[point][0] >= MXOFF) {
-                    point += temp[point][0];
+        if (h.linbits == 0) {
+            // both sign bits in one read when both values are set
+            if (huff.x != 0) {
+                if (huff.y != 0) {
+                    final int signs = br.hgetbits(2);
+                    if ((signs & 2) != 0) {
+                        huff.x = -huff.x;
+                    }
+                    if ((signs & 1) != 0) {
+                        huff.y = -huff.y;
+                    }
+                } else if (br.hget1bit() != 0) {
+                    huff.x = -huff.x;
                 }
-                point += temp[point][0];
-            }
-            level >>>= 1;
-            // MDM: ht[0] is always 0;
-        } while ((level != 0) || (point < 0));
-
-
-        if (h.tablename0 == '3' && (h.tablename1 == '2' || h.tablename1 == '3')) {
-            huff.v = (huff.y >> 3) & 1;
-            huff.w = (huff.y >> 2) & 1;
-            huff.x = (huff.y >> 1) & 1;
-            huff.y = huff.y & 1;
-
-            if (huff.v != 0) {
+            } else if (huff.y != 0) {
                 if (br.hget1bit() != 0) {
-                    huff.v *= -1; //-v[0];
+                    huff.y = -huff.y;
                 }
             }
-            if (huff.w != 0) {
-                if (br.hget1bit() != 0) {
-                    huff.w *= -1; //-w[0];
+        } else {
+            // the escape bits and the sign bit that follows them in one read
+            if ((h.xlen - 1) == huff.x) {
+                final int bits = br.hgetbits(h.linbits + 1);
+                huff.x += bits >>> 1;
+                if ((bits & 1) != 0) {
+                    huff.x = -huff.x;
                 }
-            }
-            if (huff.x != 0) {
+            } else if (huff.x != 0) {
                 if (br.hget1bit() != 0) {
-                    huff.x *= -1; //-x[0];
+                    huff.x = -huff.x;
                 }
             }
-            if (huff.y != 0) {
+            if ((h.ylen - 1) == huff.y) {
+                final int bits = br.hgetbits(h.linbits + 1);
+                huff.y += bits >>> 1;
+                if ((bits & 1) != 0) {
+                    huff.y = -huff.y;
+                }
+            } else if (huff.y != 0) {
                 if (br.hget1bit() != 0) {
-                    huff.y *= -1; //-y[0];
+                    huff.y = -huff.y;
                 }
             }
-        } else {
-            if (h.linbits != 0) {
-                if ((h.xlen - 1) == huff.x) {
-                    huff.x += br.hgetbits(h.linbits);
-                }
+        }
+    }
+
+    /**
+     * Decodes the count1 region with table 32 or 33 into <code>is</code> from
+     * <code>index</code> on, until <code>part2_3_end</code> or 576 values.
+     * Each quadruple takes one peek of the code and its sign bits together.
+     * A quadruple that runs over <code>part2_3_end</code> is dropped and its
+     * bits are given back. Returns the index after the last value.
+     */
+    public static int decodeCount1(final HuffmanTables h, final int[] is, int index, final int part2_3_end, final BitReserve br) {
+        final int[] lookup = h.lookup;
+        // the code and up to four sign bits
+        final int peekbits = h.lookupbits + 4;
+        while ((br.totbit < part2_3_end) && (index < 576)) {
+            final int bits = br.peekbits(peekbits);
+            final int e = lookup[bits >>> 4];
+            final int len = e >>> 8;
+            final int vwxy = e & 0xf;
+            // sign bits left aligned, the next one is the sign bit of the int
+            int signs = bits << (32 - peekbits + len);
+            br.flushbits(len + Integer.bitCount(vwxy));
+
+            if ((vwxy & 8) != 0) {
+                is[index] = signs < 0 ? -1 : 1;
+                signs <<= 1;
+            } else {
+                is[index] = 0;
             }
-            if (huff.x != 0) {
-                if (br.hget1bit() != 0) {
-                    huff.x *= -1; //-x[0];
-                }
+            if ((vwxy & 4) != 0) {
+                is[index + 1] = signs < 0 ? -1 : 1;
+                signs <<= 1;
+            } else {
+                is[index + 1] = 0;
             }
-            if (h.linbits != 0) {
-                if ((h.ylen - 1) == huff.y) {
-                    huff.y += br.hgetbits(h.linbits);
-                }
+            if ((vwxy & 2) != 0) {
+                is[index + 2] = signs < 0 ? -1 : 1;
+                signs <<= 1;
+            } else {
+                is[index + 2] = 0;
             }
-            if (huff.y != 0) {
-                if (br.hget1bit() != 0) {
-                    huff.y *= -1; //-y[0];
-                }
+            if ((vwxy & 1) != 0) {
+                is[index + 3] = signs < 0 ? -1 : 1;
+            } else {
+                is[index + 3] = 0;
             }
+            index += 4;
+        }
+
+        final int num_bits = br.totbit;
+        if (num_bits > part2_3_end) {
+            br.rewindNbits(num_bits - part2_3_end);
+            index -= 4;
+        }
+        return index;
+    }
+
+    /**
+     * Follows the branch <code>bit</code> of the tree node at <code>point</code>.
+     */
+    private static int step(final int[][] val, int point, final int bit) {
+        while (val[point][bit] >= MXOFF) {
+            point += val[point][bit];
+        }
+        return point + val[point][bit];
+    }
+
+    /**
+     * Length of the longest code below the tree node at <code>point</code>.
+     */
+    private static int depth(final int[][] val, final int point) {
+        if (val[point][0] == 0) {
+            return 0;
         }
+        return 1 + Math.max(depth(val, step(val, point, 0)), depth(val, step(val, point, 1)));
     }
 
-    private void loadTables() {
+    /**
+     * Walks <code>width</code> bits of <code>index</code> down from <code>point</code>.
+     * Returns the leaf reached as <code>~(length << 16 | leaf)</code>, or the node
+     * reached after all the bits.
+     */
+    private static int walk(final int[][] val, int point, final int index, final int width) {
+        for (int n = 0; n < width; n++) {
+            if (val[point][0] == 0) {
+                return ~(n << 16 | point);
+            }
+            point = step(val, point, (index >>> (width - 1 - n)) & 1);
+        }
+        return val[point][0] == 0 ? ~(width << 16 | point) : point;
+    }
 
+    /**
+     * Number of entries of the table for the node at <code>point</code> and
+     * all the tables below it.
+     */
+    private static int tableSize(final int[][] val, final int point, final int width) {
+        int size = 1 << width;
+        for (int i = 0; i < (1 << width); i++) {
+            final int node = walk(val, point, i, width);
+            if (node >= 0) {
+                size += tableSize(val, node, depth(val, node));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Fills the table for the node at <code>point</code> at <code>base</code>.
+     * Leaf entries hold <code>length << 8 | value</code> with the length of the
+     * code consumed at this level, entries of codes longer than <code>width</code>
+     * hold <code>0x80000000 | subwidth << 16 | offset</code> of the next table,
+     * which is wide enough for the rest of every code. Returns the end of the
+     * space used.
+     */
+    private static int buildTable(final int[][] val, final int point, final int width, final int[] lookup, final int base) {
+        int free = base + (1 << width);
+        for (int i = 0; i < (1 << width); i++) {
+            final int node = walk(val, point, i, width);
+            if (node < 0) {
+                lookup[base + i] = ((~node >>> 16) << 8) | val[~node & 0xffff][1];
+            } else {
+                final int subwidth = depth(val, node);
+                lookup[base + i] = 0x80000000 | (subwidth << 16) | free;
+                free = buildTable(val, node, subwidth, lookup, free);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Compiles the tree into the lookup table used by decode().
+     */
+    private void compile() {
+        final int maxlen = depth(val, 0);
+        if (maxlen == 0) {
+            return;
+        }
+        lookupbits = Math.min(maxlen, LOOKUP_BITS);
+        lookup = new int[tableSize(val, 0, lookupbits)];
+        buildTable(val, 0, lookupbits, lookup, 0);
+    }
+
+    private static HuffmanTables[] loadTables() {
+
+        HuffmanTables[] ht = new HuffmanTables[HTN];
         int[][] array;
-        try (ObjectInputStream in = new ObjectInputStream(getClass().getClassLoader().getResourceAsStream("huffman.ser"))) {
-            ht = new HuffmanTables[HTN];
+        try (ObjectInputStream in = new ObjectInputStream(HuffmanTables.class.getClassLoader().getResourceAsStream("huffman.ser"))) {
             array = (int[][]) in.readObject();
             ht[0] = new HuffmanTables("0  ", 0, 0, 0, 0, -1, array, 0);
             array = (int[][]) in.readObject();
@@ -219,10 +338,7 @@ final class HuffmanTables {
             System.out.println("couldn't load the Huffman Tables");
             System.exit(1);
         }
-    }
-
-    public HuffmanTables() {
-        loadTables();
+        return ht;
     }
 
 }
@@ -54,11 +54,19 @@ final class LayerIIIDecoder {
 
     private final static float t_43[];
 
+    /**
+     * 2^(0.25 * (global_gain - 210)) for the 256 values of global_gain.
+     */
+    private final static float global_gain_pow[];
+
     static {
         t_43 = new float[8192];
         double d43 = (4.0 / 3.0);
         for (int i = 0; i < 8192; i++)
             t_43[i] = (float) Math.pow(i, d43);
+        global_gain_pow = new float[256];
+        for (int i = 0; i < 256; i++)
+            global_gain_pow[i] = (float) Math.pow(2.0, (0.25 * (i - 210.0)));
     }
 
     private final static float TAN12[] =
@@ -109,7 +117,7 @@ final class LayerIIIDecoder {
                             -8.4752577594E-02f, -6.4157525656E-02f, -4.1131172614E-02f, -1.4790705759E-02f}
             };
 
-    private static int reorder_table[][] = /* this array is a huge tax on the system */
+    private final static int reorder_table[][] = /* this array is a huge tax on the system */
             {
                     {0, 4, 8, 1, 5, 9, 2, 6, 10, 3, 7, 11, 12, 16, 20, 13,
                             17, 21, 14, 18, 22, 15, 19, 23, 24, 28, 32, 25, 29, 33, 26, 30,
@@ -335,56 +343,70 @@ final class LayerIIIDecoder {
     final static int slen0[] = {0, 0, 0, 0, 3, 1, 1, 1, 2, 2, 2, 3, 3, 3, 4, 4};
     final static int slen1[] = {0, 1, 2, 3, 0, 1, 2, 3, 1, 2, 3, 1, 2, 3, 2, 3};
 
-    private final static HuffmanTables.Huffman huff = new HuffmanTables.Huffman();
-
-    private final static int[] is_pos = new int[576];
-    private final static float[] is_ratio = new float[576];
-
-    private final static float[] tsOutCopy = new float[18];
-    private final static float[] rawout = new float[36];
-    private static final int[] is_1d = new int[SBLIMIT * SSLIMIT + 4];
-    private static final float[][][] ro = new float[2][SBLIMIT][SSLIMIT];
-    private static final float[][][] lr = new float[2][SBLIMIT][SSLIMIT];
-    private static final float[] out_1d = new float[SBLIMIT * SSLIMIT];
-    private static final float[][] prevblck = new float[2][SBLIMIT * SSLIMIT];
-    private static final float[][] k = new float[2][SBLIMIT * SSLIMIT];
-    private static int nonzero0, nonzero1;
-    private static BitStream stream;
-    private static Header header;
-    private static SynthesisFilter filter1, filter2;
-    private static SampleBuffer buffer;
-    private static int which_channels;
-    private static BitReserve br;
-    private static SideInformation sideInformation;
-
-    public static int[] scalefac0L = new int[23];
-    public static int[][] scalefac0S = new int[3][13];
-    public static int[] scalefac1L = new int[23];
-    public static int[][] scalefac1S = new int[3][13];
-
-    private static int max_gr;
-    private static int frame_start;
-    private static int part2_start;
-    private static int channels;
-    private static int first_channel;
-    private static int last_channel;
-    private static int sfreq;
-
-    private final static float[] samples1 = new float[32];
-    private final static float[] samples2 = new float[32];
-
-    private static int[] sfBandIndexL;
-    private static int[] sfBandIndexS;
-    private static HuffmanTables h;
-
-
-    public LayerIIIDecoder(BitStream stream0, Header header0, SynthesisFilter filtera, SynthesisFilter filterb, SampleBuffer buffer0, int which_ch0) {
+    private final HuffmanTables.Huffman huff = new HuffmanTables.Huffman();
+
+    private final int[] is_pos = new int[576];
+    private final float[] is_ratio = new float[576];
+
+    private final float[] rawout = new float[36];
+    private final int[] is_1d = new int[SBLIMIT * SSLIMIT + 4];
+    // the lines of a granule per channel, dequantized then stereo processed in place
+    private final float[][] ro = new float[2][SBLIMIT * SSLIMIT];
+    // the lines of the short blocks after the reorder
+    private final float[][] reordered = new float[2][SBLIMIT * SSLIMIT];
+    private final float[][] prevblck = new float[2][SBLIMIT * SSLIMIT];
+    // subbands of prevblck that may be nonzero, per channel
+    private final int[] prevSubbands = new int[2];
+    private final float[][] k = new float[2][SBLIMIT * SSLIMIT];
+    private int nonzero0, nonzero1;
+    // the subbands decoded, the lowest ones of the output rate
+    private final int subbands;
+    // the lines dequantized for them, for long and short blocks: the short
+    // ones are reordered within their scale factor band, up to its end
+    private final int longLines, shortLines;
+    private final BitStream stream;
+    private final Header header;
+    private final SynthesisFilter filter1, filter2;
+    private SampleBuffer buffer;
+    private final int which_channels;
+    private final BitReserve br;
+    private final SideInformation sideInformation;
+
+    private final int[] scalefac0L = new int[23];
+    private final int[][] scalefac0S = new int[3][13];
+    private final int[] scalefac1L = new int[23];
+    private final int[][] scalefac1S = new int[3][13];
+
+    private final int max_gr;
+    private int frame_start;
+    private int part2_start;
+    private final int channels;
+    private int first_channel;
+    private int last_channel;
+    private final int sfreq;
+
+    private final float[] samples1 = new float[32];
+    private final float[] samples2 = new float[32];
+
+    private int[] sfBandIndexL;
+    private int[] sfBandIndexS;
+    // the reorder of the mixed blocks, the 2 long subbands are kept in place
+    private final int[] reorder_mixed = new int[576];
+    private HuffmanTables h;
+
+
+    /**
+     * @param rate The divisor of the output rate, one of {@link OutputRate}:
+     *             only the lowest <code>32 / rate</code> subbands are decoded.
+     */
+    public LayerIIIDecoder(BitStream stream0, Header header0, SynthesisFilter filtera, SynthesisFilter filterb, SampleBuffer buffer0, int which_ch0, int rate) {
         stream = stream0;
         header = header0;
         filter1 = filtera;
         filter2 = filterb;
         buffer = buffer0;
         which_channels = which_ch0;
+        subbands = SBLIMIT / rate;
         frame_start = 0;
         channels = (header.mode() == Header.SINGLE_CHANNEL) ? 1 : 2;
         max_gr = (header.version() == Header.MPEG1) ? 2 : 1;
@@ -416,6 +438,26 @@ final class LayerIIIDecoder {
                 break;
         }
 
+        longLines = subbands * SSLIMIT;
+        int band = 0;
+        while (sfBandIndexS[band] * 3 < longLines) {
+            band++;
+        }
+        shortLines = sfBandIndexS[band] * 3;
+
+        for (int i = 0; i < 36; i++) {
+            reorder_mixed[i] = i;
+        }
+        for (int sfb = 3; sfb < 13; sfb++) {
+            final int sfb_start3 = sfBandIndexS[sfb] * 3;
+            final int sfb_lines = sfBandIndexS[sfb + 1] - sfBandIndexS[sfb];
+            for (int freq = 0; freq < sfb_lines; freq++) {
+                for (int window = 0; window < 3; window++) {
+                    reorder_mixed[sfb_start3 + freq * 3 + window] = sfb_start3 + window * sfb_lines + freq;
+                }
+            }
+        }
+
         if (channels == 2) {
             switch (which_channels) {
                 case OutputChannels.LEFT_CHANNEL:
@@ -442,16 +484,85 @@ final class LayerIIIDecoder {
         nonzero0 = nonzero1 = 576;
         br = new BitReserve();
         sideInformation = new SideInformation();
-        h = new HuffmanTables();
+    }
+
+    /**
+     * Drops the main data kept for the next frames, the overlap of the
+     * hybrid filter bank and the scale factors, as at the start of a stream.
+     */
+    final void reset() {
+        int flush_main = (br.totbit & 7);
+        if (flush_main != 0) {
+            br.hgetbits(8 - flush_main);
+        }
+        for (int i = frame_start - (br.totbit >>> 3); i > 0; i--) {
+            br.hgetbits(8);
+        }
+        for (int ch = 0; ch < 2; ch++) {
+            for (int j = 0; j < 576; j++) {
+                prevblck[ch][j] = 0.0f;
+            }
+            prevSubbands[ch] = 0;
+        }
+        // a granule may keep the scale factors of the granules before
+        for (int sfb = 0; sfb < 23; sfb++) {
+            scalefac0L[sfb] = scalefac1L[sfb] = 0;
+        }
+        for (int window = 0; window < 3; window++) {
+            for (int sfb = 0; sfb < 13; sfb++) {
+                scalefac0S[window][sfb] = scalefac1S[window][sfb] = 0;
+            }
+        }
     }
 
     public final void decodeFrame() {
+        if (!fillReservoir()) {
+            return;
+        }
+
+        for (int gr = 0; gr < max_gr; gr++) {
+            for (int ch = 0; ch < channels; ch++) {
+                part2_start = br.totbit;
+                if (header.version() == Header.MPEG1) {
+                    get_scale_factors_1(ch, gr);
+                } else {
+                    get_scale_factors_2(ch, gr);
+                }
+                huffman_decode(ch, gr);
+                dequantize_sample(ro[ch], ch, gr);
+            }
+
+            stereo(gr);
+
+            if ((channels == 2) && (which_channels == OutputChannels.DOWNMIX_CHANNELS)) {
+                downmix(gr);
+                continue;
+            }
+            for (int ch = first_channel; ch <= last_channel; ch++) {
+                final float[] out_1d = reorder(ch, gr);
+                int sblimit = antialias(out_1d, ch, gr, nonzeroSubbands(ch, gr));
+                sblimit = hybrid(out_1d, ch, gr, sblimit);
+                if ((ch == 0) || (which_channels == OutputChannels.RIGHT_CHANNEL)) {
+                    polyphase(out_1d, sblimit, filter1, samples1);
+                } else {
+                    polyphase(out_1d, sblimit, filter2, samples2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the side information of the frame and moves its main data to the
+     * bit reservoir, then goes to the main data of the frame in it.
+     *
+     * @return False if the reservoir does not hold the main data of the
+     * frame yet, as for the first frames after a seek.
+     */
+    private final boolean fillReservoir() {
         int nSlots = header.slots();
         readSideInformation();
 
-        for (int i = 0; i < nSlots; i++) {
-            br.hputbuf(stream.readbits(8));
-        }
+        stream.readMainData(br, nSlots);
         int main_data_end = br.totbit >>> 3;
         int flush_main = (br.totbit & 7);
         if (flush_main != 0) {
@@ -463,7 +574,7 @@ final class LayerIIIDecoder {
         int bytes_to_discard = frame_start - main_data_end - sideInformation.main_data_begin;
         frame_start += nSlots;
         if (bytes_to_discard < 0)
-            return;
+            return false;
 
 
         /*int bytes_to_discard = frame_start - main_data_end - si.main_data_begin;
@@ -480,7 +591,24 @@ final class LayerIIIDecoder {
 
         while (bytes_to_discard-- > 0)
             br.hgetbits(8);
+        return true;
+    }
 
+    /**
+     * Reads a frame without decoding it: its main data is kept in the bit
+     * reservoir for the next frames, and the synthesis filters are moved as
+     * by a decoding. The overlap of the hybrid filter bank and the samples
+     * of the synthesis filters are left as they are, the next frame decoded
+     * gives them back but its own samples are not the ones of a decoding from
+     * the start.
+     *
+     * @return False if the frame would not have been decoded, for lack of main data.
+     */
+    final boolean skipFrame() {
+        if (!fillReservoir()) {
+            return false;
+        }
+        // the scale factors are read, a granule may keep the ones of the last one
         for (int gr = 0; gr < max_gr; gr++) {
             for (int ch = 0; ch < channels; ch++) {
                 part2_start = br.totbit;
@@ -489,282 +617,357 @@ final class LayerIIIDecoder {
                 } else {
                     get_scale_factors_2(ch, gr);
                 }
-                huffman_decode(ch, gr);
-                dequantize_sample(ro[ch], ch, gr);
+                final int huffman_bits = part2_start + sideInformation.ch[ch].gr[gr].part2_3_length - br.totbit;
+                if (huffman_bits > 0) {
+                    br.hgetbits(huffman_bits);
+                }
             }
+        }
+        filter1.skip(max_gr * SSLIMIT);
+        if (filter2 != null) {
+            filter2.skip(max_gr * SSLIMIT);
+        }
+        return true;
+    }
 
-            stereo(gr);
-
-            for (int ch = first_channel; ch <= last_channel; ch++) {
-                reorder(lr[ch], ch, gr);
-                antialias(ch, gr);
-                hybrid(ch, gr);
+    /**
+     * Sets the buffer the samples of the next frames are written to.
+     */
+    final void setOutputBuffer(SampleBuffer buffer0) {
+        buffer = buffer0;
+    }
 
-                for (int sb18 = 18; sb18 < 576; sb18 += 36) {
-                    for (int ss = 1; ss < SSLIMIT; ss += 2) {
-                        out_1d[sb18 + ss] *= -1;
-                    }
-                }
+    /**
+     * Mixes both channels into the first one, as their mean. When the
+     * channels have the same blocks the lines are mixed before the hybrid
+     * filter bank, as it is linear, so only one channel goes through it.
+     * Otherwise both go through it at half scale and their outputs are
+     * added. In both cases the overlap of the mix is the sum of the overlaps
+     * of both channels, the second one is kept to zero with the first way.
+     */
+    private final void downmix(final int gr) {
+        final float[] ro0 = ro[0];
+        final float[] ro1 = ro[1];
+        final float[] out_1d;
+        int sblimit;
+        if (isSameBlocks(sideInformation.ch[0].gr[gr], sideInformation.ch[1].gr[gr])) {
+            final float[] prev0 = prevblck[0];
+            final float[] prev1 = prevblck[1];
+            for (int i = 0, end = prevSubbands[1] * SSLIMIT; i < end; i++) {
+                prev0[i] += prev1[i];
+                prev1[i] = 0.0f;
+            }
+            prevSubbands[0] = Math.max(prevSubbands[0], prevSubbands[1]);
+            prevSubbands[1] = 0;
+            final int bound = Math.max(nonzero0, nonzero1);
+            for (int i = 0; i < bound; i++) {
+                ro0[i] = (ro0[i] + ro1[i]) * 0.5f;
+            }
+            nonzero0 = bound;
+            out_1d = reorder(0, gr);
+            sblimit = antialias(out_1d, 0, gr, nonzeroSubbands(0, gr));
+            sblimit = hybrid(out_1d, 0, gr, sblimit);
+        } else {
+            for (int i = 0; i < 576; i++) {
+                ro0[i] *= 0.5f;
+                ro1[i] *= 0.5f;
+            }
+            out_1d = reorder(0, gr);
+            sblimit = hybrid(out_1d, 0, gr, antialias(out_1d, 0, gr, nonzeroSubbands(0, gr)));
+            final float[] out1 = reorder(1, gr);
+            final int sblimit1 = hybrid(out1, 1, gr, antialias(out1, 1, gr, nonzeroSubbands(1, gr)));
+            for (int i = 0, end = sblimit1 * SSLIMIT; i < end; i++) {
+                out_1d[i] += out1[i];
+            }
+            sblimit = Math.max(sblimit, sblimit1);
+        }
+        polyphase(out_1d, sblimit, filter1, samples1);
+    }
 
-                if ((ch == 0) || (which_channels == OutputChannels.RIGHT_CHANNEL)) {
-                    for (int ss = 0; ss < SSLIMIT; ss++) {
-                        for (int sb18 = 0, sb = 0; sb18 < 576; sb18 += 18) {
-                            samples1[sb++] = out_1d[sb18 + ss];
-                        }
-                        filter1.calculateSamples(samples1, buffer);
-                    }
-                } else {
-                    for (int ss = 0; ss < SSLIMIT; ss++) {
-                        for (int sb18 = 0, sb = 0; sb18 < 576; sb18 += 18) {
-                            samples2[sb++] = out_1d[sb18 + ss];
-                        }
-                        filter2.calculateSamples(samples2, buffer);
-                    }
+    /**
+     * @return True if the lines of both granules go through the same windows
+     * of the hybrid filter bank.
+     */
+    private static boolean isSameBlocks(final GRInfo a, final GRInfo b) {
+        return (a.window_switching_flag == b.window_switching_flag) && (a.block_type == b.block_type)
+                && ((a.window_switching_flag == 0) || (a.mixed_block_flag == b.mixed_block_flag));
+    }
 
-                }
+    /**
+     * Inverts the odd samples of the odd subbands, then sends the 18 time
+     * slots of the 32 subbands to the synthesis filter.
+     *
+     * @param sblimit The subbands that may hold nonzero samples, from {@link #hybrid(float[], int, int, int)}.
+     */
+    private final void polyphase(final float[] out_1d, final int sblimit, final SynthesisFilter filter, final float[] samples) {
+        for (int sb18 = 18; sb18 < sblimit * 18; sb18 += 36) {
+            for (int ss = 1; ss < SSLIMIT; ss += 2) {
+                out_1d[sb18 + ss] *= -1;
+            }
+        }
+        // above the subbands decoded the lines are left as they are, and
+        // the samples stay zero
+        final int sb18limit = subbands * 18;
+        for (int ss = 0; ss < SSLIMIT; ss++) {
+            for (int sb18 = 0, sb = 0; sb18 < sb18limit; sb18 += 18) {
+                samples[sb++] = out_1d[sb18 + ss];
             }
+            filter.calculateSamples(samples, buffer);
         }
     }
 
-    public void invMDCT(final float[] in, final float[] out, final int block_type) {
-        if (block_type == 2) {
-            for (int i = 0; i < 36; i++)
-                out[i] = 0;
-
-            int six_i = 0;
-            for (int i = 0; i < 3; i++) {
-                // 12 point IMDCT
-                // Begin 12 point IDCT
-                // Input aliasing for 12 pt IDCT
-                int curr0 = 15 + i;
-                int curr1 = 12 + i;
-                int curr2 = 9 + i;
-                int curr3 = 6 + i;
-                int curr4 = 3 + i;
-                in[curr0] += in[curr1];
-                in[curr1] += in[curr2];
-                in[curr2] += in[curr3];
-                in[curr3] += in[curr4];
-                in[curr4] += in[i];
-                // Input aliasing on odd indices (for 6 point IDCT)
-                in[curr0] += in[curr2];
-                in[curr2] += in[curr4];
-                // 3 point IDCT on even indices
-                float pp2 = in[curr1] * 0.500000000f;
-                float pp1 = in[curr3] * 0.866025403f;
-                float sum = in[i] + pp2;
-                float tmpf_1 = in[i] - in[curr1];
-                float tmpf_0 = sum + pp1;
-                float tmpf_2 = sum - pp1;
-                // End 3 point IDCT on even indices
-                // 3 point IDCT on odd indices (for 6 point IDCT)
-                pp2 = in[curr0] * 0.500000000f;
-                pp1 = in[curr2] * 0.866025403f;
-                sum = in[curr4] + pp2;
-                float tmpf_4 = in[curr4] - in[curr0];
-                float tmpf_5 = sum + pp1;
-                float tmpf_3 = sum - pp1;
-                // End 3 point IDCT on odd indices
-                // Twiddle factors on odd indices (for 6 point IDCT)
-                tmpf_3 *= 1.931851653f;
-                tmpf_4 *= 0.707106781f;
-                tmpf_5 *= 0.517638090f;
-                // Output butterflies on 2 3 point IDCT's (for 6 point IDCT)
-                float save = tmpf_0;
-                tmpf_0 += tmpf_5;
-                tmpf_5 = save - tmpf_5;
-                save = tmpf_1;
-                tmpf_1 += tmpf_4;
-                tmpf_4 = save - tmpf_4;
-                save = tmpf_2;
-                tmpf_2 += tmpf_3;
-                tmpf_3 = save - tmpf_3;
-                // End 6 point IDCT
-                // Twiddle factors on indices (for 12 point IDCT)
-                tmpf_0 *= 0.504314480f;
-                tmpf_1 *= 0.541196100f;
-                tmpf_2 *= 0.630236207f;
-                tmpf_3 *= 0.821339815f;
-                tmpf_4 *= 1.306562965f;
-                tmpf_5 *= 3.830648788f;
-                // End 12 point IDCT
-                // Shift to 12 point modified IDCT, multiply by window type 2
-                float tmpf_8 = -tmpf_0 * 0.793353340f;
-                float tmpf_9 = -tmpf_0 * 0.608761429f;
-                float tmpf_7 = -tmpf_1 * 0.923879532f;
-                float tmpf_10 = -tmpf_1 * 0.382683432f;
-                float tmpf_6 = -tmpf_2 * 0.991444861f;
-                float tmpf_11 = -tmpf_2 * 0.130526192f;
-                tmpf_0 = tmpf_3;
-                tmpf_1 = tmpf_4 * 0.382683432f;
-                tmpf_2 = tmpf_5 * 0.608761429f;
-                tmpf_3 = -tmpf_5 * 0.793353340f;
-                tmpf_4 = -tmpf_4 * 0.923879532f;
-                tmpf_5 = -tmpf_0 * 0.991444861f;
-                tmpf_0 *= 0.130526192f;
-                out[six_i + 6] += tmpf_0;
-                out[six_i + 7] += tmpf_1;
-                out[six_i + 8] += tmpf_2;
-                out[six_i + 9] += tmpf_3;
-                out[six_i + 10] += tmpf_4;
-                out[six_i + 11] += tmpf_5;
-                out[six_i + 12] += tmpf_6;
-                out[six_i + 13] += tmpf_7;
-                out[six_i + 14] += tmpf_8;
-                out[six_i + 15] += tmpf_9;
-                out[six_i + 16] += tmpf_10;
-                out[six_i + 17] += tmpf_11;
-                six_i += 6;
-            }
-        } else {
-            // 36 point IDCT
-            // input aliasing for 36 point IDCT
-            in[17] += in[16];
-            in[16] += in[15];
-            in[15] += in[14];
-            in[14] += in[13];
-            in[13] += in[12];
-            in[12] += in[11];
-            in[11] += in[10];
-            in[10] += in[9];
-            in[9] += in[8];
-            in[8] += in[7];
-            in[7] += in[6];
-            in[6] += in[5];
-            in[5] += in[4];
-            in[4] += in[3];
-            in[3] += in[2];
-            in[2] += in[1];
-            in[1] += in[0];
-            // 18 point IDCT for odd indices
-            // input aliasing for 18 point IDCT
-            in[17] += in[15];
-            in[15] += in[13];
-            in[13] += in[11];
-            in[11] += in[9];
-            in[9] += in[7];
-            in[7] += in[5];
-            in[5] += in[3];
-            in[3] += in[1];
-
-            // Fast 9 Point Inverse Discrete Cosine Transform
-            //
-            // By  Francois-Raymond Boyer
-            //         mailto:boyerf@iro.umontreal.ca
-            //         http://www.iro.umontreal.ca/~boyerf
-            //
-            // The code has been optimized for Intel processors
-            //  (takes a lot of time to convert float to and from iternal FPU representation)
-            //
-            // It is a simple "factorization" of the IDCT matrix.
-            // 9 point IDCT on even indices
-            // 5 points on odd indices (not realy an IDCT)
-            float i00 = in[0] + in[0];
-            float iip12 = i00 + in[12];
-            float tmp0 = iip12 + in[4] * 1.8793852415718f + in[8] * 1.532088886238f + in[16] * 0.34729635533386f;
-            float tmp1 = i00 + in[4] - in[8] - in[12] - in[12] - in[16];
-            float tmp2 = iip12 - in[4] * 0.34729635533386f - in[8] * 1.8793852415718f + in[16] * 1.532088886238f;
-            float tmp3 = iip12 - in[4] * 1.532088886238f + in[8] * 0.34729635533386f - in[16] * 1.8793852415718f;
-            float tmp4 = in[0] - in[4] + in[8] - in[12] + in[16];
-            // 4 points on even indices
-            float i66_ = in[6] * 1.732050808f; // Sqrt[3]
-            float tmp0_ = in[2] * 1.9696155060244f + i66_ + in[10] * 1.2855752193731f + in[14] * 0.68404028665134f;
-            float tmp1_ = (in[2] - in[10] - in[14]) * 1.732050808f;
-            float tmp2_ = in[2] * 1.2855752193731f - i66_ - in[10] * 0.68404028665134f + in[14] * 1.9696155060244f;
-            float tmp3_ = in[2] * 0.68404028665134f - i66_ + in[10] * 1.9696155060244f - in[14] * 1.2855752193731f;
-            // 9 point IDCT on odd indices
-            // 5 points on odd indices (not realy an IDCT)
-            float i0 = in[1] + in[1];
-            float i0p12 = i0 + in[13];
-            float tmp0o = i0p12 + in[5] * 1.8793852415718f + in[9] * 1.532088886238f + in[17] * 0.34729635533386f;
-            float tmp1o = i0 + in[5] - in[9] - in[13] - in[13] - in[17];
-            float tmp2o = i0p12 - in[5] * 0.34729635533386f - in[9] * 1.8793852415718f + in[17] * 1.532088886238f;
-            float tmp3o = i0p12 - in[5] * 1.532088886238f + in[9] * 0.34729635533386f - in[17] * 1.8793852415718f;
-            float tmp4o = (in[1] - in[5] + in[9] - in[13] + in[17]) * 0.707106781f; // Twiddled
-            // 4 points on even indices
-            float i6_ = in[7] * 1.732050808f; // Sqrt[3]
-            float tmp0_o = in[3] * 1.9696155060244f + i6_ + in[11] * 1.2855752193731f + in[15] * 0.68404028665134f;
-            float tmp1_o = (in[3] - in[11] - in[15]) * 1.732050808f;
-            float tmp2_o = in[3] * 1.2855752193731f - i6_ - in[11] * 0.68404028665134f + in[15] * 1.9696155060244f;
-            float tmp3_o = in[3] * 0.68404028665134f - i6_ + in[11] * 1.9696155060244f - in[15] * 1.2855752193731f;
-            // Twiddle factors on odd indices
-            // and
-            // Butterflies on 9 point IDCT's
-            // and
-            // twiddle factors for 36 point IDCT
-            float e = tmp0 + tmp0_;
-            float o = (tmp0o + tmp0_o) * 0.501909918f;
-            float tmpf_0 = e + o;
-            float tmpf_17 = e - o;
-            e = tmp1 + tmp1_;
-            o = (tmp1o + tmp1_o) * 0.517638090f;
-            float tmpf_1 = e + o;
-            float tmpf_16 = e - o;
-            e = tmp2 + tmp2_;
-            o = (tmp2o + tmp2_o) * 0.551688959f;
-            float tmpf_2 = e + o;
-            float tmpf_15 = e - o;
-            e = tmp3 + tmp3_;
-            o = (tmp3o + tmp3_o) * 0.610387294f;
-            float tmpf_3 = e + o;
-            float tmpf_14 = e - o;
-            float tmpf_4 = tmp4 + tmp4o;
-            float tmpf_13 = tmp4 - tmp4o;
-            e = tmp3 - tmp3_;
-            o = (tmp3o - tmp3_o) * 0.871723397f;
-            float tmpf_5 = e + o;
-            float tmpf_12 = e - o;
-            e = tmp2 - tmp2_;
-            o = (tmp2o - tmp2_o) * 1.183100792f;
-            float tmpf_6 = e + o;
-            float tmpf_11 = e - o;
-            e = tmp1 - tmp1_;
-            o = (tmp1o - tmp1_o) * 1.931851653f;
-            float tmpf_7 = e + o;
-            float tmpf_10 = e - o;
-            e = tmp0 - tmp0_;
-            o = (tmp0o - tmp0_o) * 5.736856623f;
-            float tmpf_8 = e + o;
-            float tmpf_9 = e - o;
-            // end 36 point IDCT
-            // shift to modified IDCT
-            float[] win_bt = win[block_type];
-            out[0] = -tmpf_9 * win_bt[0];
-            out[1] = -tmpf_10 * win_bt[1];
-            out[2] = -tmpf_11 * win_bt[2];
-            out[3] = -tmpf_12 * win_bt[3];
-            out[4] = -tmpf_13 * win_bt[4];
-            out[5] = -tmpf_14 * win_bt[5];
-            out[6] = -tmpf_15 * win_bt[6];
-            out[7] = -tmpf_16 * win_bt[7];
-            out[8] = -tmpf_17 * win_bt[8];
-            out[9] = tmpf_17 * win_bt[9];
-            out[10] = tmpf_16 * win_bt[10];
-            out[11] = tmpf_15 * win_bt[11];
-            out[12] = tmpf_14 * win_bt[12];
-            out[13] = tmpf_13 * win_bt[13];
-            out[14] = tmpf_12 * win_bt[14];
-            out[15] = tmpf_11 * win_bt[15];
-            out[16] = tmpf_10 * win_bt[16];
-            out[17] = tmpf_9 * win_bt[17];
-            out[18] = tmpf_8 * win_bt[18];
-            out[19] = tmpf_7 * win_bt[19];
-            out[20] = tmpf_6 * win_bt[20];
-            out[21] = tmpf_5 * win_bt[21];
-            out[22] = tmpf_4 * win_bt[22];
-            out[23] = tmpf_3 * win_bt[23];
-            out[24] = tmpf_2 * win_bt[24];
-            out[25] = tmpf_1 * win_bt[25];
-            out[26] = tmpf_0 * win_bt[26];
-            out[27] = tmpf_0 * win_bt[27];
-            out[28] = tmpf_1 * win_bt[28];
-            out[29] = tmpf_2 * win_bt[29];
-            out[30] = tmpf_3 * win_bt[30];
-            out[31] = tmpf_4 * win_bt[31];
-            out[32] = tmpf_5 * win_bt[32];
-            out[33] = tmpf_6 * win_bt[33];
-            out[34] = tmpf_7 * win_bt[34];
-            out[35] = tmpf_8 * win_bt[35];
+    /**
+     * 36 point IMDCT of a long block, in place: the 18 lines of the subband
+     * at <code>off</code> are replaced by the first half of the output plus the
+     * overlap of the last granule, the second half is kept as the next
+     * overlap.
+     */
+    private void imdct36(final float[] x, final int off, final float[] prev, final float[] win_bt) {
+        // 36 point IDCT
+        // input aliasing for 36 point IDCT
+        x[off + 17] += x[off + 16];
+        x[off + 16] += x[off + 15];
+        x[off + 15] += x[off + 14];
+        x[off + 14] += x[off + 13];
+        x[off + 13] += x[off + 12];
+        x[off + 12] += x[off + 11];
+        x[off + 11] += x[off + 10];
+        x[off + 10] += x[off + 9];
+        x[off + 9] += x[off + 8];
+        x[off + 8] += x[off + 7];
+        x[off + 7] += x[off + 6];
+        x[off + 6] += x[off + 5];
+        x[off + 5] += x[off + 4];
+        x[off + 4] += x[off + 3];
+        x[off + 3] += x[off + 2];
+        x[off + 2] += x[off + 1];
+        x[off + 1] += x[off];
+        // 18 point IDCT for odd indices
+        // input aliasing for 18 point IDCT
+        x[off + 17] += x[off + 15];
+        x[off + 15] += x[off + 13];
+        x[off + 13] += x[off + 11];
+        x[off + 11] += x[off + 9];
+        x[off + 9] += x[off + 7];
+        x[off + 7] += x[off + 5];
+        x[off + 5] += x[off + 3];
+        x[off + 3] += x[off + 1];
+
+        // Fast 9 Point Inverse Discrete Cosine Transform
+        //
+        // By  Francois-Raymond Boyer
+        //         mailto:boyerf@iro.umontreal.ca
+        //         http://www.iro.umontreal.ca/~boyerf
+        //
+        // The code has been optimized for Intel processors
+        //  (takes a lot of time to convert float to and from iternal FPU representation)
+        //
+        // It is a simple "factorization" of the IDCT matrix.
+        // 9 point IDCT on even indices
+        // 5 points on odd indices (not realy an IDCT)
+        float i00 = x[off] + x[off];
+        float iip12 = i00 + x[off + 12];
+        float tmp0 = iip12 + x[off + 4] * 1.8793852415718f + x[off + 8] * 1.532088886238f + x[off + 16] * 0.34729635533386f;
+        float tmp1 = i00 + x[off + 4] - x[off + 8] - x[off + 12] - x[off + 12] - x[off + 16];
+        float tmp2 = iip12 - x[off + 4] * 0.34729635533386f - x[off + 8] * 1.8793852415718f + x[off + 16] * 1.532088886238f;
+        float tmp3 = iip12 - x[off + 4] * 1.532088886238f + x[off + 8] * 0.34729635533386f - x[off + 16] * 1.8793852415718f;
+        float tmp4 = x[off] - x[off + 4] + x[off + 8] - x[off + 12] + x[off + 16];
+        // 4 points on even indices
+        float i66_ = x[off + 6] * 1.732050808f; // Sqrt[3]
+        float tmp0_ = x[off + 2] * 1.9696155060244f + i66_ + x[off + 10] * 1.2855752193731f + x[off + 14] * 0.68404028665134f;
+        float tmp1_ = (x[off + 2] - x[off + 10] - x[off + 14]) * 1.732050808f;
+        float tmp2_ = x[off + 2] * 1.2855752193731f - i66_ - x[off + 10] * 0.68404028665134f + x[off + 14] * 1.9696155060244f;
+        float tmp3_ = x[off + 2] * 0.68404028665134f - i66_ + x[off + 10] * 1.9696155060244f - x[off + 14] * 1.2855752193731f;
+        // 9 point IDCT on odd indices
+        // 5 points on odd indices (not realy an IDCT)
+        float i0 = x[off + 1] + x[off + 1];
+        float i0p12 = i0 + x[off + 13];
+        float tmp0o = i0p12 + x[off + 5] * 1.8793852415718f + x[off + 9] * 1.532088886238f + x[off + 17] * 0.34729635533386f;
+        float tmp1o = i0 + x[off + 5] - x[off + 9] - x[off + 13] - x[off + 13] - x[off + 17];
+        float tmp2o = i0p12 - x[off + 5] * 0.34729635533386f - x[off + 9] * 1.8793852415718f + x[off + 17] * 1.532088886238f;
+        float tmp3o = i0p12 - x[off + 5] * 1.532088886238f + x[off + 9] * 0.34729635533386f - x[off + 17] * 1.8793852415718f;
+        float tmp4o = (x[off + 1] - x[off + 5] + x[off + 9] - x[off + 13] + x[off + 17]) * 0.707106781f; // Twiddled
+        // 4 points on even indices
+        float i6_ = x[off + 7] * 1.732050808f; // Sqrt[3]
+        float tmp0_o = x[off + 3] * 1.9696155060244f + i6_ + x[off + 11] * 1.2855752193731f + x[off + 15] * 0.68404028665134f;
+        float tmp1_o = (x[off + 3] - x[off + 11] - x[off + 15]) * 1.732050808f;
+        float tmp2_o = x[off + 3] * 1.2855752193731f - i6_ - x[off + 11] * 0.68404028665134f + x[off + 15] * 1.9696155060244f;
+        float tmp3_o = x[off + 3] * 0.68404028665134f - i6_ + x[off + 11] * 1.9696155060244f - x[off + 15] * 1.2855752193731f;
+        // Twiddle factors on odd indices
+        // and
+        // Butterflies on 9 point IDCT's
+        // and
+        // twiddle factors for 36 point IDCT
+        float e = tmp0 + tmp0_;
+        float o = (tmp0o + tmp0_o) * 0.501909918f;
+        float tmpf_0 = e + o;
+        float tmpf_17 = e - o;
+        e = tmp1 + tmp1_;
+        o = (tmp1o + tmp1_o) * 0.517638090f;
+        float tmpf_1 = e + o;
+        float tmpf_16 = e - o;
+        e = tmp2 + tmp2_;
+        o = (tmp2o + tmp2_o) * 0.551688959f;
+        float tmpf_2 = e + o;
+        float tmpf_15 = e - o;
+        e = tmp3 + tmp3_;
+        o = (tmp3o + tmp3_o) * 0.610387294f;
+        float tmpf_3 = e + o;
+        float tmpf_14 = e - o;
+        float tmpf_4 = tmp4 + tmp4o;
+        float tmpf_13 = tmp4 - tmp4o;
+        e = tmp3 - tmp3_;
+        o = (tmp3o - tmp3_o) * 0.871723397f;
+        float tmpf_5 = e + o;
+        float tmpf_12 = e - o;
+        e = tmp2 - tmp2_;
+        o = (tmp2o - tmp2_o) * 1.183100792f;
+        float tmpf_6 = e + o;
+        float tmpf_11 = e - o;
+        e = tmp1 - tmp1_;
+        o = (tmp1o - tmp1_o) * 1.931851653f;
+        float tmpf_7 = e + o;
+        float tmpf_10 = e - o;
+        e = tmp0 - tmp0_;
+        o = (tmp0o - tmp0_o) * 5.736856623f;
+        float tmpf_8 = e + o;
+        float tmpf_9 = e - o;
+        // end 36 point IDCT
+        // shift to modified IDCT, add the overlap of the last granule and keep the new one
+        x[off] = -tmpf_9 * win_bt[0] + prev[off];
+        prev[off] = tmpf_8 * win_bt[18];
+        x[off + 1] = -tmpf_10 * win_bt[1] + prev[off + 1];
+        prev[off + 1] = tmpf_7 * win_bt[19];
+        x[off + 2] = -tmpf_11 * win_bt[2] + prev[off + 2];
+        prev[off + 2] = tmpf_6 * win_bt[20];
+        x[off + 3] = -tmpf_12 * win_bt[3] + prev[off + 3];
+        prev[off + 3] = tmpf_5 * win_bt[21];
+        x[off + 4] = -tmpf_13 * win_bt[4] + prev[off + 4];
+        prev[off + 4] = tmpf_4 * win_bt[22];
+        x[off + 5] = -tmpf_14 * win_bt[5] + prev[off + 5];
+        prev[off + 5] = tmpf_3 * win_bt[23];
+        x[off + 6] = -tmpf_15 * win_bt[6] + prev[off + 6];
+        prev[off + 6] = tmpf_2 * win_bt[24];
+        x[off + 7] = -tmpf_16 * win_bt[7] + prev[off + 7];
+        prev[off + 7] = tmpf_1 * win_bt[25];
+        x[off + 8] = -tmpf_17 * win_bt[8] + prev[off + 8];
+        prev[off + 8] = tmpf_0 * win_bt[26];
+        x[off + 9] = tmpf_17 * win_bt[9] + prev[off + 9];
+        prev[off + 9] = tmpf_0 * win_bt[27];
+        x[off + 10] = tmpf_16 * win_bt[10] + prev[off + 10];
+        prev[off + 10] = tmpf_1 * win_bt[28];
+        x[off + 11] = tmpf_15 * win_bt[11] + prev[off + 11];
+        prev[off + 11] = tmpf_2 * win_bt[29];
+        x[off + 12] = tmpf_14 * win_bt[12] + prev[off + 12];
+        prev[off + 12] = tmpf_3 * win_bt[30];
+        x[off + 13] = tmpf_13 * win_bt[13] + prev[off + 13];
+        prev[off + 13] = tmpf_4 * win_bt[31];
+        x[off + 14] = tmpf_12 * win_bt[14] + prev[off + 14];
+        prev[off + 14] = tmpf_5 * win_bt[32];
+        x[off + 15] = tmpf_11 * win_bt[15] + prev[off + 15];
+        prev[off + 15] = tmpf_6 * win_bt[33];
+        x[off + 16] = tmpf_10 * win_bt[16] + prev[off + 16];
+        prev[off + 16] = tmpf_7 * win_bt[34];
+        x[off + 17] = tmpf_9 * win_bt[17] + prev[off + 17];
+        prev[off + 17] = tmpf_8 * win_bt[35];
+    }
+
+    /**
+     * The three 12 point IMDCT of a short block, overlapped in rawout, then
+     * added to the overlap of the last granule as for a long block.
+     */
+    private void imdct12(final float[] x, final int off, final float[] prev) {
+        for (int i = 0; i < 36; i++)
+            rawout[i] = 0;
+
+        int six_i = 0;
+        for (int i = 0; i < 3; i++) {
+            // 12 point IMDCT
+            // Begin 12 point IDCT
+            // Input aliasing for 12 pt IDCT
+            int curr0 = off + 15 + i;
+            int curr1 = off + 12 + i;
+            int curr2 = off + 9 + i;
+            int curr3 = off + 6 + i;
+            int curr4 = off + 3 + i;
+            x[curr0] += x[curr1];
+            x[curr1] += x[curr2];
+            x[curr2] += x[curr3];
+            x[curr3] += x[curr4];
+            x[curr4] += x[off + i];
+            // Input aliasing on odd indices (for 6 point IDCT)
+            x[curr0] += x[curr2];
+            x[curr2] += x[curr4];
+            // 3 point IDCT on even indices
+            float pp2 = x[curr1] * 0.500000000f;
+            float pp1 = x[curr3] * 0.866025403f;
+            float sum = x[off + i] + pp2;
+            float tmpf_1 = x[off + i] - x[curr1];
+            float tmpf_0 = sum + pp1;
+            float tmpf_2 = sum - pp1;
+            // End 3 point IDCT on even indices
+            // 3 point IDCT on odd indices (for 6 point IDCT)
+            pp2 = x[curr0] * 0.500000000f;
+            pp1 = x[curr2] * 0.866025403f;
+            sum = x[curr4] + pp2;
+            float tmpf_4 = x[curr4] - x[curr0];
+            float tmpf_5 = sum + pp1;
+            float tmpf_3 = sum - pp1;
+            // End 3 point IDCT on odd indices
+            // Twiddle factors on odd indices (for 6 point IDCT)
+            tmpf_3 *= 1.931851653f;
+            tmpf_4 *= 0.707106781f;
+            tmpf_5 *= 0.517638090f;
+            // Output butterflies on 2 3 point IDCT's (for 6 point IDCT)
+            float save = tmpf_0;
+            tmpf_0 += tmpf_5;
+            tmpf_5 = save - tmpf_5;
+            save = tmpf_1;
+            tmpf_1 += tmpf_4;
+            tmpf_4 = save - tmpf_4;
+            save = tmpf_2;
+            tmpf_2 += tmpf_3;
+            tmpf_3 = save - tmpf_3;
+            // End 6 point IDCT
+            // Twiddle factors on indices (for 12 point IDCT)
+            tmpf_0 *= 0.504314480f;
+            tmpf_1 *= 0.541196100f;
+            tmpf_2 *= 0.630236207f;
+            tmpf_3 *= 0.821339815f;
+            tmpf_4 *= 1.306562965f;
+            tmpf_5 *= 3.830648788f;
+            // End 12 point IDCT
+            // Shift to 12 point modified IDCT, multiply by window type 2
+            float tmpf_8 = -tmpf_0 * 0.793353340f;
+            float tmpf_9 = -tmpf_0 * 0.608761429f;
+            float tmpf_7 = -tmpf_1 * 0.923879532f;
+            float tmpf_10 = -tmpf_1 * 0.382683432f;
+            float tmpf_6 = -tmpf_2 * 0.991444861f;
+            float tmpf_11 = -tmpf_2 * 0.130526192f;
+            tmpf_0 = tmpf_3;
+            tmpf_1 = tmpf_4 * 0.382683432f;
+            tmpf_2 = tmpf_5 * 0.608761429f;
+            tmpf_3 = -tmpf_5 * 0.793353340f;
+            tmpf_4 = -tmpf_4 * 0.923879532f;
+            tmpf_5 = -tmpf_0 * 0.991444861f;
+            tmpf_0 *= 0.130526192f;
+            rawout[six_i + 6] += tmpf_0;
+            rawout[six_i + 7] += tmpf_1;
+            rawout[six_i + 8] += tmpf_2;
+            rawout[six_i + 9] += tmpf_3;
+            rawout[six_i + 10] += tmpf_4;
+            rawout[six_i + 11] += tmpf_5;
+            rawout[six_i + 12] += tmpf_6;
+            rawout[six_i + 13] += tmpf_7;
+            rawout[six_i + 14] += tmpf_8;
+            rawout[six_i + 15] += tmpf_9;
+            rawout[six_i + 16] += tmpf_10;
+            rawout[six_i + 17] += tmpf_11;
+            six_i += 6;
+        }
+        for (int i = 0; i < 18; i++) {
+            x[off + i] = rawout[i] + prev[off + i];
+            prev[off + i] = rawout[i + 18];
         }
     }
 
@@ -921,8 +1124,8 @@ final class LayerIIIDecoder {
             {{6, 9, 9, 9}, {6, 9, 12, 6}, {15, 18, 0, 0},
                     {6, 15, 12, 0}, {6, 12, 9, 6}, {6, 18, 9, 0}}};
 
-    private static int n_slen2[] = new int[512]; /* MPEG 2.0 slen for 'normal' mode */
-    private static int i_slen2[] = new int[256]; /* MPEG 2.0 slen for intensity stereo */
+    private final static int n_slen2[] = new int[512]; /* MPEG 2.0 slen for 'normal' mode */
+    private final static int i_slen2[] = new int[256]; /* MPEG 2.0 slen for intensity stereo */
 
     static {
         int i, j, k, l;
@@ -1196,7 +1399,7 @@ final class LayerIIIDecoder {
 
 
     private final void huffman_decode(final int ch, final int gr) {
-        //huff.x = huff.y = huff.v = huff.w= 0;
+        //huff.x = huff.y = 0;
         GRInfo s = sideInformation.ch[ch].gr[gr];
         int part2_3_end = part2_start + s.part2_3_length;
         int num_bits = 0;
@@ -1243,21 +1446,7 @@ final class LayerIIIDecoder {
             is_1d[index++] = huff.y;
         }
 
-        h = HuffmanTables.ht[s.count1table_select + 32];
-        num_bits = br.totbit;
-        while ((num_bits < part2_3_end) && (index < 576)) {
-            HuffmanTables.decode(h, huff, br);
-            is_1d[index++] = huff.v;
-            is_1d[index++] = huff.w;
-            is_1d[index++] = huff.x;
-            is_1d[index++] = huff.y;
-            num_bits = br.totbit;
-        }
-
-        if (num_bits > part2_3_end) {
-            br.rewindNbits(num_bits - part2_3_end);
-            index -= 4;
-        }
+        index = HuffmanTables.decodeCount1(HuffmanTables.ht[s.count1table_select + 32], is_1d, index, part2_3_end, br);
 
         num_bits = br.totbit;
         // Dismiss stuffing bits
@@ -1282,182 +1471,119 @@ final class LayerIIIDecoder {
         }
     }
 
-    private final void dequantize_sample(final float xr[][], final int ch, final int gr) {
+    private final void dequantize_sample(final float xr[], final int ch, final int gr) {
         GRInfo gr_info = (sideInformation.ch[ch].gr[gr]);
-        int cb = 0;
-        int next_cb_boundary = 0;
-        int cb_begin = 0;
-        int cb_width = 0;
-        float g_gain = 0.0f;
-        // choose correct scalefactor band per block type, initalize boundary
-        if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
-            if (gr_info.mixed_block_flag != 0) {
-                next_cb_boundary = sfBandIndexL[1];
-            }
-            // LONG blocks: 0,1,3
-            else {
-                cb_width = sfBandIndexS[1];
-                next_cb_boundary = (cb_width << 2) - cb_width;
-                cb_begin = 0;
-            }
-        } else {
-            next_cb_boundary = sfBandIndexL[1];
-            // LONG blocks: 0,1,3
-        }
+        final int s[][] = (ch == 0) ? scalefac0S : scalefac1S;
+        final int l[] = (ch == 0) ? scalefac0L : scalefac1L;
+        final int scale = gr_info.scalefac_scale;
         // Compute overall (global) scaling.
-        g_gain = (float) Math.pow(2.0, (0.25 * (gr_info.global_gain - 210.0)));
+        final float g_gain = global_gain_pow[gr_info.global_gain];
         int maxNonZero = (ch == 0) ? nonzero0 : nonzero1;
-        for (int j = 0; j < maxNonZero; j++) {
-            reste = j % SSLIMIT;
-            quotien = (int) ((j - reste) / SSLIMIT);
-            if (is_1d[j] == 0) {
-                xr[quotien][reste] = 0.0f;
-            } else {
-                int abv = is_1d[j];
-                if (is_1d[j] > 0) {
-                    xr[quotien][reste] = g_gain * t_43[abv];
-                } else {
-                    xr[quotien][reste] = -g_gain * t_43[-abv];
+        int j = 0;
+        if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
+            maxNonZero = Math.min(maxNonZero, shortLines);
+            int cb = 0;
+            if (gr_info.mixed_block_flag != 0) {
+                // LONG blocks for the first 2 subbands, then SHORT from the band 3
+                final int preflag = gr_info.preflag;
+                for (; cb < 8 && j < maxNonZero; cb++) {
+                    final int idx = (l[cb] + (preflag != 0 ? pretab[cb] : 0)) << scale;
+                    j = dequantize_lines(xr, j, Math.min(sfBandIndexL[cb + 1], maxNonZero), g_gain, two_to_negative_half_pow[idx]);
                 }
+                cb = 3;
             }
-        }
-        // apply formula per block type
-        for (int i = 0, j = 0; j < maxNonZero; j++, i++) {
-            reste = j % SSLIMIT;
-            quotien = (int) ((j - reste) / SSLIMIT);
-            if (i == next_cb_boundary) {
-                /*
-                 *  Adjust critical band boundary
-                 */
-                if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
-                    if (gr_info.mixed_block_flag != 0) {
-                        if (i == sfBandIndexL[8]) {
-                            next_cb_boundary = sfBandIndexS[4];
-                            next_cb_boundary = (next_cb_boundary << 2) - next_cb_boundary;
-                            cb = 3;
-                            cb_width = sfBandIndexS[4] - sfBandIndexS[3];
-                            cb_begin = sfBandIndexS[3];
-                            cb_begin = (cb_begin << 2) - cb_begin;
-                        } else if (i < sfBandIndexL[8]) {
-                            next_cb_boundary = sfBandIndexL[(++cb) + 1];
-                        } else {
-                            next_cb_boundary = sfBandIndexS[(++cb) + 1];
-                            next_cb_boundary = (next_cb_boundary << 2) - next_cb_boundary;
-                            cb_begin = sfBandIndexS[cb];
-                            cb_width = sfBandIndexS[cb + 1] - cb_begin;
-                            cb_begin = (cb_begin << 2) - cb_begin;
-                        }
-                    } else {
-                        next_cb_boundary = sfBandIndexS[(++cb) + 1];
-                        next_cb_boundary = (next_cb_boundary << 2) - next_cb_boundary;
-                        cb_begin = sfBandIndexS[cb];
-                        cb_width = sfBandIndexS[cb + 1] - cb_begin;
-                        cb_begin = (cb_begin << 2) - cb_begin;
-                    }
-                } else {
-                    // long blocks
-                    next_cb_boundary = sfBandIndexL[(++cb) + 1];
+            for (; cb < 13 && j < maxNonZero; cb++) {
+                final int cb_width = sfBandIndexS[cb + 1] - sfBandIndexS[cb];
+                for (int window = 0; window < 3 && j < maxNonZero; window++) {
+                    final int idx = (s[window][cb] << scale) + (gr_info.subblock_gain[window] << 2);
+                    j = dequantize_lines(xr, j, Math.min(j + cb_width, maxNonZero), g_gain, two_to_negative_half_pow[idx]);
                 }
             }
-            int s[][] = (ch == 0) ? scalefac0S : scalefac1S;
-            int l[] = (ch == 0) ? scalefac0L : scalefac1L;
-            // Do long/short dependent scaling operations
-            if ((gr_info.window_switching_flag != 0) && (((gr_info.block_type == 2) && (gr_info.mixed_block_flag == 0)) || ((gr_info.block_type == 2) && (gr_info.mixed_block_flag != 0) && (j >= 36)))) {
-                int t_index = (i - cb_begin) / cb_width;
-                int idx = s[t_index][cb] << gr_info.scalefac_scale;
-                idx += (gr_info.subblock_gain[t_index] << 2);
-                xr[quotien][reste] *= two_to_negative_half_pow[idx];
-            } else {
-                // LONG block types 0,1,3 & 1st 2 subbands of switched blocks
-                int idx = l[cb];
-                if (gr_info.preflag != 0) {
-                    idx += pretab[cb];
-                }
-                idx = idx << gr_info.scalefac_scale;
-                xr[quotien][reste] *= two_to_negative_half_pow[idx];
+        } else {
+            // LONG blocks: 0,1,3
+            maxNonZero = Math.min(maxNonZero, longLines);
+            final int preflag = gr_info.preflag;
+            for (int cb = 0; cb < 22 && j < maxNonZero; cb++) {
+                final int idx = (l[cb] + (preflag != 0 ? pretab[cb] : 0)) << scale;
+                j = dequantize_lines(xr, j, Math.min(sfBandIndexL[cb + 1], maxNonZero), g_gain, two_to_negative_half_pow[idx]);
             }
         }
 
-        int reste;
-        int quotien;
-        for (int j = maxNonZero; j < 576; j++) {
-            reste = j % SSLIMIT;
-            quotien = (int) ((j - reste) / SSLIMIT);
-            xr[quotien][reste] = 0.0f;
+        for (; j < 576; j++) {
+            xr[j] = 0.0f;
         }
     }
 
+    /**
+     * Dequantizes the lines of a scalefactor band, or of a window of a short
+     * band: the 4/3 power of the value times the global gain, with its sign,
+     * times the gain of the band.
+     *
+     * @return The line after the last one.
+     */
+    private final int dequantize_lines(final float xr[], int j, final int end, final float g_gain, final float factor) {
+        for (; j < end; j++) {
+            final int abv = is_1d[j];
+            if (abv == 0) {
+                xr[j] = 0.0f;
+            } else if (abv > 0) {
+                xr[j] = (g_gain * t_43[abv]) * factor;
+            } else {
+                xr[j] = -(g_gain * t_43[-abv]) * factor;
+            }
+        }
+        return j;
+    }
 
-    static int freq, freq3, src_line, des_line, sfb_start, sfb_start3, sfb_lines, reste, quotien;
 
-    private final void reorder(final float xr[][], final int ch, final int gr) {
+    /**
+     * The subbands that may hold nonzero lines after the stereo processing
+     * and the reorder, from the count of lines decoded by huffman_decode.
+     * The joint stereo mixes both channels, and the short blocks are
+     * reordered within their scale factor band. The subbands above the ones
+     * of a reduced output rate are not decoded.
+     */
+    private final int nonzeroSubbands(final int ch, final int gr) {
         GRInfo gr_info = (sideInformation.ch[ch].gr[gr]);
-
+        int bound = (ch == 0) ? nonzero0 : nonzero1;
+        if ((channels == 2) && (header.mode() == Header.JOINT_STEREO)) {
+            bound = Math.max(nonzero0, nonzero1);
+        }
         if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
-            if (gr_info.mixed_block_flag != 0) {
-                // NO REORDER FOR LOW 2 SUBBANDS
-                for (int i = 36; --i >= 0; ) {//i = 0; i < 36; i++) {
-                    reste = i % SSLIMIT;
-                    quotien = (int) ((i - reste) / SSLIMIT);
-                    out_1d[i] = xr[quotien][reste];
-                }
-                // REORDERING FOR REST SWITCHED SHORT
-                for (int sfb = 3, sfb_start = sfBandIndexS[3], sfb_lines = sfBandIndexS[4] - sfb_start; sfb < 13;
-                     sfb++, sfb_start = sfBandIndexS[sfb], sfb_lines = sfBandIndexS[sfb + 1] - sfb_start) {
-                    sfb_start3 = (sfb_start << 2) - sfb_start;
-                    for (freq = 0, freq3 = 0; freq < sfb_lines; freq++, freq3 += 3) {
-                        src_line = sfb_start3 + freq;
-                        des_line = sfb_start3 + freq3;
-                        reste = src_line % SSLIMIT;
-                        quotien = (int) ((src_line - reste) / SSLIMIT);
-                        out_1d[des_line] = xr[quotien][reste];
-                        src_line += sfb_lines;
-                        des_line++;
-                        reste = src_line % SSLIMIT;
-                        quotien = (int) ((src_line - reste) / SSLIMIT);
-                        out_1d[des_line] = xr[quotien][reste];
-                        src_line += sfb_lines;
-                        des_line++;
-                        reste = src_line % SSLIMIT;
-                        quotien = (int) ((src_line - reste) / SSLIMIT);
-                        out_1d[des_line] = xr[quotien][reste];
-                    }
-                }
-            } else {
-                // pure short
-                int reorder[] = reorder_table[sfreq];
-                for (int i = 576; --i >= 0; ) {//while(i < 576){
-                    int j = reorder[i];
-                    reste = j % SSLIMIT;
-                    quotien = (int) ((j - reste) / SSLIMIT);
-                    out_1d[i] = xr[quotien][reste];
-                }
+            int sfb = 0;
+            while (sfBandIndexS[sfb] * 3 < bound) {
+                sfb++;
             }
-        } else {
-            // long blocks
+            bound = sfBandIndexS[sfb] * 3;
+        }
+        return Math.min((bound + SSLIMIT - 1) / SSLIMIT, subbands);
+    }
+
+    /**
+     * @return The lines of the channel in the order of the subbands: the
+     * lines themselves for the long blocks, else reordered with the windows of
+     * the short blocks interleaved.
+     */
+    private final float[] reorder(final int ch, final int gr) {
+        GRInfo gr_info = (sideInformation.ch[ch].gr[gr]);
+        final float[] xr = ro[ch];
+        if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
+            final int[] reorder = (gr_info.mixed_block_flag != 0) ? reorder_mixed : reorder_table[sfreq];
+            final float[] out_1d = reordered[ch];
             for (int i = 576; --i >= 0; ) {
-                reste = i % SSLIMIT;
-                quotien = (int) ((i - reste) / SSLIMIT);
-                out_1d[i] = xr[quotien][reste];
+                out_1d[i] = xr[reorder[i]];
             }
+            return out_1d;
         }
+        // long blocks
+        return xr;
     }
 
     private final void stereo(final int gr) {
-        if (channels == 1) {
-            for (int sb = SBLIMIT; --sb >= 0; ) {
-                float l[] = lr[0][sb];
-                float r[] = ro[0][sb];
-                for (int ss = 0; ss < SSLIMIT; ss += 3) {
-                    l[ss] = r[ss];
-                    l[ss + 1] = r[ss + 1];
-                    l[ss + 2] = r[ss + 2];
-                }
-            }
-        } else {
+        // the lines of a single channel are left as they are
+        if (channels == 2) {
             GRInfo gr_info = (sideInformation.ch[0].gr[gr]);
             int mode_ext = header.mode_extension();
-            // boolean ms_stereo = ((header.mode() == Header.JOINT_STEREO) && ((mode_ext & 0x2) != 0));
             boolean i_stereo = ((header.mode() == Header.JOINT_STEREO) && ((mode_ext & 0x1) != 0));
             //boolean lsf = ((header.version() == Header.MPEG2_LSF));
             int io_type = (gr_info.scalefac_compress & 1);
@@ -1492,7 +1618,7 @@ final class LayerIIIDecoder {
                                 int lines = sfBandIndexS[sfb + 1] - i;
                                 i = (i << 2) - i + (j + 1) * lines - 1;
                                 while (lines > 0) {
-                                    if (ro[1][i / 18][i % 18] != 0.0f) {
+                                    if (ro[1][i] != 0.0f) {
                                         sfbcnt = sfb;
                                         sfb = -10;
                                         lines = -10;
@@ -1546,7 +1672,7 @@ final class LayerIIIDecoder {
                             int ss = 17;
                             int sb = -1;
                             while (i >= 0) {
-                                if (ro[1][i][ss] != 0.0f) {
+                                if (ro[1][i * SSLIMIT + ss] != 0.0f) {
                                     sb = (i << 4) + (i << 1) + ss;
                                     i = -1;
                                 } else {
@@ -1592,7 +1718,7 @@ final class LayerIIIDecoder {
                                 int lines = sfBandIndexS[sfb + 1] - temp;
                                 int i = (temp << 2) - temp + (j + 1) * lines - 1;
                                 while (lines > 0) {
-                                    if (ro[1][i / 18][i % 18] != 0.0f) {
+                                    if (ro[1][i] != 0.0f) {
                                         sfbcnt = sfb;
                                         sfb = -10;
                                         lines = -10;
@@ -1649,7 +1775,7 @@ final class LayerIIIDecoder {
                     int ss = 17;
                     int sb = 0;
                     while (i >= 0) {
-                        if (ro[1][i][ss] != 0.0f) {
+                        if (ro[1][i * SSLIMIT + ss] != 0.0f) {
                             sb = (i << 4) + (i << 1) + ss;
                             i = -1;
                         } else {
@@ -1695,31 +1821,25 @@ final class LayerIIIDecoder {
                     }
                 }
             }
-            int i = 0;
-            for (int sb = 0; sb < SBLIMIT; sb++) {
-                float[] lr0 = lr[0][sb];
-                float[] lr1 = lr[1][sb];
-                float[] ro0 = ro[0][sb];
-                float[] ro1 = ro[1][sb];
-                for (int ss = 0; ss < SSLIMIT; ss++, i++) {
-                    if (is_pos[i] == 7) {
-                        if ((header.mode() == Header.JOINT_STEREO) && ((mode_ext & 0x2) != 0)) {//(ms_stereo) {
-                            lr0[ss] = (ro0[ss] + ro1[ss]) * 0.707106781f;
-                            lr1[ss] = (ro0[ss] - ro1[ss]) * 0.707106781f;
-                        } else {
-                            lr0[ss] = ro0[ss];
-                            lr1[ss] = ro1[ss];
-                        }
-                    } else if (i_stereo) {
-                        //if (lsf) {
-                        //    lr0[ss] = ro0[ss] * k[0][i];
-                        //    lr1[ss] = ro0[ss] * k[1][i];
-                        //} else {
-                        lr1[ss] = ro0[ss] / (float) (1 + is_ratio[i]);
-                        lr0[ss] = lr1[ss] * is_ratio[i];
-                        //}
+            final boolean ms_stereo = (header.mode() == Header.JOINT_STEREO) && ((mode_ext & 0x2) != 0);
+            final float[] ro0 = ro[0];
+            final float[] ro1 = ro[1];
+            for (int i = 0; i < 576; i++) {
+                if (is_pos[i] == 7) {
+                    if (ms_stereo) {
+                        final float m = ro0[i];
+                        final float s = ro1[i];
+                        ro0[i] = (m + s) * 0.707106781f;
+                        ro1[i] = (m - s) * 0.707106781f;
                     }
-
+                } else if (i_stereo) {
+                    //if (lsf) {
+                    //    lr0[ss] = ro0[ss] * k[0][i];
+                    //    lr1[ss] = ro0[ss] * k[1][i];
+                    //} else {
+                    ro1[i] = ro0[i] / (float) (1 + is_ratio[i]);
+                    ro0[i] = ro1[i] * is_ratio[i];
+                    //}
                 }
             }
         }
@@ -1738,19 +1858,28 @@ final class LayerIIIDecoder {
                     -0.0945741925262f, -0.0409655828852f, -0.0141985685725f, -0.00369997467375f
             };
 
-    private final void antialias(final int ch, final int gr) {
+    /**
+     * @param sblimit The subbands that may hold nonzero lines.
+     * @return The subbands that may hold nonzero lines after the butterflies,
+     * which reach one subband above the last nonzero one.
+     */
+    private final int antialias(final float[] out_1d, final int ch, final int gr, final int sblimit) {
         GRInfo gr_info = (sideInformation.ch[ch].gr[gr]);
 
         int sb18lim = 0;
 
         if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2) && (gr_info.mixed_block_flag == 0)) {
-            return;
+            return sblimit;
         }
         if ((gr_info.window_switching_flag != 0) && (gr_info.mixed_block_flag != 0) && (gr_info.block_type == 2)) {
             sb18lim = 18;
         } else {
             sb18lim = 558;
         }
+        // the butterflies between two zero subbands give zero
+        if (sb18lim > sblimit * 18) {
+            sb18lim = sblimit * 18;
+        }
 
         for (int sb18 = 0; sb18 < sb18lim; sb18 += 18) {
             int src_idx1 = sb18 + 17;
@@ -1804,60 +1933,33 @@ final class LayerIIIDecoder {
             out_1d[src_idx1] = (bu * cst) - (bd * cat);
             out_1d[src_idx2] = (bd * cst) + (bu * cat);
         }
+        return sblimit == 0 ? 0 : Math.min(sblimit + 1, subbands);
     }
 
-    private final void hybrid(final int ch, final int gr) {
+    /**
+     * @param sblimit The subbands that may hold nonzero lines, from {@link #nonzeroSubbands(int, int)}.
+     * @return The subbands that may hold nonzero samples, above them the output is zero.
+     */
+    private final int hybrid(final float[] out_1d, final int ch, final int gr, final int sblimit) {
         GRInfo gr_info = (sideInformation.ch[ch].gr[gr]);
-        for (int sb18 = 0; sb18 < 576; sb18 += 18) {
+        float[] prev = prevblck[ch];
+        int sb18limit = sblimit * 18;
+        for (int sb18 = 0; sb18 < sb18limit; sb18 += 18) {
             int bt = ((gr_info.window_switching_flag != 0) && (gr_info.mixed_block_flag != 0) && (sb18 < 36)) ? 0 : gr_info.block_type;
-
-            for (int cc = 0; cc < 18; cc++) {
-                tsOutCopy[cc] = out_1d[cc + sb18];
-            }
-
-            invMDCT(tsOutCopy, rawout, bt);
-
-            for (int cc = 0; cc < 18; cc++) {
-                out_1d[cc + sb18] = tsOutCopy[cc];
+            if (bt == 2) {
+                imdct12(out_1d, sb18, prev);
+            } else {
+                imdct36(out_1d, sb18, prev, win[bt]);
             }
-
-            int sbt = sb18;
-            out_1d[sbt] = rawout[0] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[18];
-            out_1d[sbt] = rawout[1] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[19];
-            out_1d[sbt] = rawout[2] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[20];
-            out_1d[sbt] = rawout[3] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[21];
-            out_1d[sbt] = rawout[4] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[22];
-            out_1d[sbt] = rawout[5] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[23];
-            out_1d[sbt] = rawout[6] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[24];
-            out_1d[sbt] = rawout[7] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[25];
-            out_1d[sbt] = rawout[8] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[26];
-            out_1d[sbt] = rawout[9] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[27];
-            out_1d[sbt] = rawout[10] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[28];
-            out_1d[sbt] = rawout[11] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[29];
-            out_1d[sbt] = rawout[12] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[30];
-            out_1d[sbt] = rawout[13] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[31];
-            out_1d[sbt] = rawout[14] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[32];
-            out_1d[sbt] = rawout[15] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[33];
-            out_1d[sbt] = rawout[16] + prevblck[ch][sbt];
-            prevblck[ch][sbt++] = rawout[34];
-            out_1d[sbt] = rawout[17] + prevblck[ch][sbt];
-            prevblck[ch][sbt] = rawout[35];
         }
+        // The transform of a zero subband is zero, only the overlap of the
+        // last granule is shifted out.
+        int prevlimit = prevSubbands[ch];
+        for (int i = sb18limit, end = prevlimit * 18; i < end; i++) {
+            out_1d[i] = prev[i];
+            prev[i] = 0.0f;
+        }
+        prevSubbands[ch] = sblimit;
+        return Math.max(sblimit, prevlimit);
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A local file mapped in memory. Headers and frames are read straight from
+ * the mapping, without the stream buffers in between, and giving back bytes
+ * only moves the position back.
+ */
+final class MappedSource implements ByteSource {
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    // position in the file of the first byte mapped
+    private final long base;
+
+    /**
+     * Maps the channel from its current position to its end.
+     *
+     * @throws IOException If the channel cannot be mapped, or the rest of the file is larger than 2 GB.
+     */
+    MappedSource(FileChannel channel) throws IOException {
+        final long position = channel.position();
+        final long length = channel.size() - position;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("The file is too large to be mapped: " + length + " bytes.");
+        }
+        this.channel = channel;
+        this.base = position;
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        final int remaining = buffer.remaining();
+        if (remaining == 0) {
+            return len == 0 ? 0 : -1;
+        }
+        if (len > remaining) {
+            len = remaining;
+        }
+        buffer.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public void unread(byte[] b, int off, int len) {
+        buffer.position(buffer.position() - len);
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        if (position < base || position - base > buffer.limit()) {
+            throw new IOException("The position is out of the file: " + position);
+        }
+        buffer.position((int) (position - base));
+    }
+
+    @Override
+    public long position() {
+        return base + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null)
+            return;
+        channel.close();
+        channel = null;
+        buffer = null;
+    }
+}
@@ -0,0 +1,26 @@
+package javazoom.jlme.decoder;
+
+
+/**
+ * The sample rate of the output, as a divisor of the rate of the stream. A
+ * reduced rate only decodes the lowest subbands, the ones below the half of
+ * the output rate, and the synthesis only computes the samples kept.
+ */
+public interface OutputRate {
+    /**
+     * Flag to indicate output should be at the rate of the stream.
+     */
+    public final static int FULL_RATE = 1;
+
+    /**
+     * Flag to indicate output should be at the half of the rate of the
+     * stream, from the lowest 16 subbands.
+     */
+    public final static int HALF_RATE = 2;
+
+    /**
+     * Flag to indicate output should be at the quarter of the rate of the
+     * stream, from the lowest 8 subbands.
+     */
+    public final static int QUARTER_RATE = 4;
+}
@@ -0,0 +1,202 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Publishes the decoded samples of a stream, a frame per buffer, 16 bits with
+ * the channels interleaved, as {@link Decoder#decode(ByteBuffer, int)}.
+ * <p>
+ * A frame is decoded only when the subscriber has requested a buffer and a
+ * buffer of the pool is free: the buffers are lent to the subscriber, which
+ * gives each one back with {@link #release(ByteBuffer)} once done with it.
+ * A slow subscriber holding all the buffers stops the decoding, whatever it
+ * requested, and the decoded samples never exceed the pool.
+ * <p>
+ * The decoder and the stream are used on the executor only, one task at a
+ * time. There is one subscriber: the decoder cannot go back to the start of
+ * the stream for another one. The stream is closed when the subscriber
+ * cancels, or when the stream ends or fails.
+ */
+public final class PcmPublisher implements Flow.Publisher<ByteBuffer> {
+    private final Decoder decoder;
+    private final BitStream stream;
+    private final Executor executor;
+    // the free buffers, all of the pool until the first request
+    private final ArrayBlockingQueue<ByteBuffer> pool;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicLong demand = new AtomicLong();
+    // the drains scheduled, the first one runs until the others are seen
+    private final AtomicInteger drains = new AtomicInteger();
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+    private Flow.Subscriber<? super ByteBuffer> subscriber;
+
+    /**
+     * Decodes on the common pool, to little endian samples.
+     *
+     * @param buffers The buffers of the pool, one frame each.
+     */
+    public PcmPublisher(Decoder decoder, BitStream stream, int buffers) {
+        this(decoder, stream, buffers, ByteOrder.LITTLE_ENDIAN, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param decoder  The decoder of the stream, whose frame read, if any, is decoded first.
+     * @param stream   The stream, closed by the publisher.
+     * @param buffers  The buffers of the pool, one frame each.
+     * @param order    The byte order of the samples.
+     * @param executor The executor of the decoding and of the signals to the subscriber.
+     */
+    public PcmPublisher(Decoder decoder, BitStream stream, int buffers, ByteOrder order, Executor executor) {
+        if (buffers < 1) {
+            throw new IllegalArgumentException("The pool needs a buffer at least: " + buffers);
+        }
+        this.decoder = decoder;
+        this.stream = stream;
+        this.executor = executor;
+        pool = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            pool.add(ByteBuffer.allocateDirect(2 * decoder.getFrameSampleCount()).order(order));
+        }
+    }
+
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The publisher has a subscriber already."));
+            return;
+        }
+        this.subscriber = subscriber;
+        // the requests made in onSubscribe are drained after it
+        drains.incrementAndGet();
+        executor.execute(() -> {
+            subscriber.onSubscribe(new Subscription());
+            drain();
+        });
+    }
+
+    /**
+     * Gives a buffer back to the pool, once the subscriber is done with its
+     * samples, so that another frame can be decoded.
+     *
+     * @param buffer A buffer received by {@link Flow.Subscriber#onNext}.
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        pool.offer(buffer);
+        schedule();
+    }
+
+    private void schedule() {
+        if (drains.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Decodes and sends frames while the subscriber requests them and the
+     * pool has buffers, then waits for another request or release.
+     */
+    private void drain() {
+        int missed = drains.get();
+        do {
+            while (!done) {
+                if (cancelled) {
+                    done = true;
+                    close();
+                } else if (invalidRequest != null) {
+                    finish(invalidRequest);
+                } else if (demand.get() > 0) {
+                    final ByteBuffer buffer = pool.poll();
+                    if (buffer == null) {
+                        break;
+                    }
+                    send(buffer);
+                } else {
+                    break;
+                }
+            }
+            missed = drains.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Decodes the next frame with samples into a buffer and sends it.
+     */
+    private void send(ByteBuffer buffer) {
+        int bytes;
+        try {
+            // a frame without main data has no samples
+            while ((bytes = decoder.decode(buffer, 1)) == 0) {
+                buffer.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.offer(buffer);
+            finish(e);
+            return;
+        }
+        if (bytes < 0) {
+            pool.offer(buffer);
+            finish(null);
+            return;
+        }
+        buffer.flip();
+        demand.decrementAndGet();
+        subscriber.onNext(buffer);
+    }
+
+    /**
+     * Closes the stream and completes the subscriber, or signals an error.
+     */
+    private void finish(Throwable error) {
+        done = true;
+        close();
+        if (error == null) {
+            subscriber.onComplete();
+        } else {
+            subscriber.onError(error);
+        }
+    }
+
+    private void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // nothing more is read
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("A subscriber must request a positive number of buffers: " + n);
+            } else {
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            // the stream is closed by a drain, not while a frame is decoded
+            cancelled = true;
+            schedule();
+        }
+    }
+}
@@ -24,57 +24,119 @@ package javazoom.jlme.decoder;
 import java.io.IOException;
 import java.io.InputStream;
 
-public class PushBackStream {
+/**
+ * A ring buffer in front of an input stream. The stream is read in chunks
+ * as large as the free space of the ring, and the bytes read are copied out
+ * with System.arraycopy. The last bytes read stay in the ring, up to half
+ * of its capacity, and the bytes given back with unread are copied in front
+ * of the position. The bytes ahead can be looked at with peek without being
+ * consumed.
+ */
+public class PushBackStream implements ByteSource {
     private byte[] buf;
-    private int pos, temp, temp2, avail;
-    private long pskip;
+    private final int mask;
+    // Positions in the stream: the oldest byte kept, the next byte to read
+    // and the end of the bytes in the ring, at index position & mask.
+    private long start, pos, end;
     private InputStream in;
 
+    /**
+     * @param size The capacity of the ring, rounded up to a power of two.
+     */
     public PushBackStream(InputStream in, int size) {
         this.in = in;
-        this.buf = new byte[size];
-        this.pos = size;
+        final int capacity = Integer.highestOneBit(Math.max(size, 16) - 1) << 1;
+        this.buf = new byte[capacity];
+        this.mask = capacity - 1;
     }
 
+    /**
+     * Reads len bytes, fewer only at the end of the stream.
+     */
     public int read(byte[] b, int off, int len) throws IOException {
-        avail = buf.length - pos;
-        if (avail > 0) {
-            if (len < avail)
-                avail = len;
-
-            if (avail == 3) {
-                temp = pos;
-                temp2 = off;
-                b[temp2++] = buf[temp++];
-                b[temp2++] = buf[temp++];
-                b[temp2] = buf[temp];
-            } else { //equals 1
-                b[off] = buf[pos];
+        int total = 0;
+        while (total < len) {
+            if (pos == end && fill() <= 0) {
+                break;
             }
-
-            pos += avail;
-            off += avail;
-            len -= avail;
+            final int n = (int) Math.min(len - total, end - pos);
+            copyOut(pos, b, off + total, n);
+            pos += n;
+            total += n;
         }
+        return total == 0 && len > 0 ? -1 : total;
+    }
 
-        if (len > 0) {
-            if ((len = in.read(b, off, len)) == -1)
-                return avail == 0 ? -1 : avail;
-
-            return avail + len;
+    /**
+     * Reads bytes without consuming them, up to half the capacity of the
+     * ring, fewer only at the end of the stream. The other half keeps the
+     * bytes read for unread.
+     */
+    @Override
+    public int peek(byte[] b, int off, int len) throws IOException {
+        while (end - pos < len) {
+            if (fill() <= 0) {
+                break;
+            }
         }
+        final int n = (int) Math.min(len, end - pos);
+        copyOut(pos, b, off, n);
+        return n == 0 && len > 0 ? -1 : n;
+    }
 
-        return avail;
+    /**
+     * Gives back bytes, they are read again before the rest of the stream.
+     * The bytes are copied in front of the position, they need not be the
+     * ones read last.
+     *
+     * @throws IllegalArgumentException If the ring has no room for the bytes.
+     */
+    public void unread(byte[] b, int off, int len) {
+        final int room = buf.length - (int) (end - pos);
+        if (len > room) {
+            throw new IllegalArgumentException("Cannot give back " + len + " bytes, the ring has room for " + room + ".");
+        }
+        pos -= len;
+        start = Math.min(start, pos);
+        copyIn(pos, b, off, len);
     }
 
+    /**
+     * Reads from the stream into the free space of the ring, after its last
+     * byte, dropping the oldest bytes beyond the half of the ring kept for
+     * unread.
+     *
+     * @return The number of bytes read, or -1 at the end of the stream.
+     */
+    private int fill() throws IOException {
+        if (in == null) {
+            return -1;
+        }
+        start = Math.max(start, pos - (buf.length >> 1));
+        final int free = buf.length - (int) (end - start);
+        if (free == 0) {
+            return 0;
+        }
+        final int index = (int) (end & mask);
+        final int read = in.read(buf, index, Math.min(free, buf.length - index));
+        if (read > 0) {
+            end += read;
+        }
+        return read;
+    }
 
-    public void unread(byte[] b, int off, int len) {
-        temp = pos -= 4;
+    private void copyOut(long from, byte[] b, int off, int len) {
+        final int index = (int) (from & mask);
+        final int first = Math.min(len, buf.length - index);
+        System.arraycopy(buf, index, b, off, first);
+        System.arraycopy(buf, 0, b, off + first, len - first);
+    }
 
-        buf[temp++] = b[off++];
-        buf[temp++] = b[off++];
-        buf[temp++] = b[off++];
-        buf[temp] = b[off++];
+    private void copyIn(long to, byte[] b, int off, int len) {
+        final int index = (int) (to & mask);
+        final int first = Math.min(len, buf.length - index);
+        System.arraycopy(b, off, buf, index, first);
+        System.arraycopy(b, off + first, buf, 0, len - first);
     }
 
     public synchronized void close() throws IOException {
@@ -20,16 +20,32 @@
  */
 package javazoom.jlme.decoder;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
 
 public class SampleBuffer {
     public final static int OBUFFERSIZE = 4 * 1152;
     public final static int MAXCHANNELS = 2;
-    private final byte[] buffer = new byte[OBUFFERSIZE];
+    private final byte[] buffer;
+    private final ShortBuffer samples;
     private final int[] bufferp = new int[MAXCHANNELS];
     private final int channels;
     private final int frequency;
 
     public SampleBuffer(int sample_frequency, int number_of_channels) {
+        this(sample_frequency, number_of_channels, OBUFFERSIZE);
+    }
+
+    /**
+     * @param buffer_size The size in bytes of the buffer, for the samples of
+     *                    a frame of the stereo output at most, smaller than
+     *                    {@link #OBUFFERSIZE} for a reduced rate.
+     */
+    public SampleBuffer(int sample_frequency, int number_of_channels, int buffer_size) {
+        buffer = new byte[buffer_size];
+        samples = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
         channels = (number_of_channels == 1) ? 1 : 3;
         frequency = sample_frequency;
         bufferp[0] = 0;
@@ -56,6 +72,14 @@ public class SampleBuffer {
         return this.frequency;
     }
 
+    /**
+     * @return The buffer as 16 bit samples, low byte first, at half the
+     * indexes of the buffer.
+     */
+    final ShortBuffer getSamples() {
+        return samples;
+    }
+
     public byte[] getBuffer() {
         return this.buffer;
     }
@@ -0,0 +1,45 @@
+package javazoom.jlme.decoder;
+
+import java.nio.ShortBuffer;
+
+
+/**
+ * A {@link SampleBuffer} over the 16 bit samples of the caller, interleaved,
+ * for {@link Decoder#decode(short[], int, int)} and
+ * {@link Decoder#decode(java.nio.ByteBuffer, int)}. The synthesis filters
+ * write the samples straight to the buffer of the caller, from an offset,
+ * frame after frame. The indexes of the channels count samples, not bytes.
+ */
+final class ShortSampleBuffer extends SampleBuffer {
+    private ShortBuffer samples;
+    private int start;
+
+    ShortSampleBuffer(int sample_frequency, int number_of_channels) {
+        super(sample_frequency, number_of_channels, 0);
+    }
+
+    /**
+     * Writes the next samples to a buffer, from an index.
+     */
+    void wrap(ShortBuffer dst, int offset) {
+        samples = dst;
+        start = offset;
+        clear();
+    }
+
+    ShortBuffer getShortBuffer() {
+        return samples;
+    }
+
+    /**
+     * @return The samples written per channel since the buffer was wrapped.
+     */
+    int getSampleCount() {
+        return (getBufferIndex(0) - start) / getChannelCount();
+    }
+
+    public void clear() {
+        setBufferIndex(0, start);
+        setBufferIndex(1, start + 1);
+    }
+}
@@ -32,6 +32,7 @@ package javazoom.jlme.decoder;
 import java.io.InputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 
 final class SynthesisFilter {
@@ -69,38 +70,53 @@ final class SynthesisFilter {
     private final static float cos1_4 = (float) (1.0 / (2.0 * Math.cos(MY_PI / 4.0)));
 
 
-    private static float d16[][] = null;
+    private final static float[] d16 = loadD16();
+    /**
+     * The windowing with the Vector API, when its class is in the classpath,
+     * the JVM is started with <code>--add-modules jdk.incubator.vector</code>
+     * and the CPU has vectors of floats, null otherwise.
+     */
+    private final static SynthesisWindow VECTOR_WINDOW = loadVectorWindow();
     private float[] v1;
     private float[] v2;
     private float[] actual_v;
+    // the offset in V of the next slot, a window reads it and the 15 slots above
     private int actual_write_pos;
-    private float[] samples;
     private int channel;
-    private static float scalefactor;
+    private final float scalefactor;
+    // the samples kept out of the 32 of a call, one every step
+    private final int step;
 
     public SynthesisFilter(int channelnumber, float factor) {
-        if (d16 == null)
-            loadD16();
-        v1 = new float[512];
-        v2 = new float[512];
+        this(channelnumber, factor, OutputRate.FULL_RATE);
+    }
+
+    /**
+     * @param rate The divisor of the output rate, one of {@link OutputRate}.
+     *             Only one sample out of <code>rate</code> is windowed, the
+     *             subbands above the ones of the output rate must be zero.
+     */
+    public SynthesisFilter(int channelnumber, float factor, int rate) {
+        v1 = new float[1024];
+        v2 = new float[1024];
         channel = channelnumber;
         scalefactor = factor;
+        step = rate;
         reset();
     }
 
     /**
-     * Converts a 1D array into a number of smaller arrays. This is used to achieve offset + constant indexing into an array. Each sub-array represents a block of values of the original array.
+     * Loads the window, stored by taps: the 32 values of the first tap of
+     * the rows, then the 32 of the second tap and so on, as the slots of V.
      *
-     * @param array     The array to split up into blocks.
-     * @param blockSize The size of the blocks to split the array into. This must be an exact divisor of the length of the array, or some data will be lost from the main array.
-     * @return An array of arrays in which each element in the returned array will be of length <code>blockSize</code>.
+     * @return The 512 values of the window.
      */
-    private final void loadD16() {
+    private static float[] loadD16() {
         float d[] = null;
         ObjectInputStream in = null;
 
         try {
-            in = new ObjectInputStream(getClass().getClassLoader().getResourceAsStream("d16.ser"));
+            in = new ObjectInputStream(SynthesisFilter.class.getClassLoader().getResourceAsStream("d16.ser"));
             d = (float[]) in.readObject();
         } catch (Exception e) {
             System.out.println("2 couldn't load the array for the SynthesisFilter ");
@@ -111,102 +127,113 @@ final class SynthesisFilter {
             } catch (Exception e) {
             }
         }
-        int size = d.length / 16;
-        d16 = new float[size][];
-        for (int i = 0; i < size; i++) {
-            d16[i] = subArray(d, i * 16, 16);
+        // d holds the 16 taps of each of the 32 rows
+        float[] d16 = new float[512];
+        for (int i = 0; i < 32; i++) {
+            for (int tap = 0; tap < 16; tap++) {
+                d16[(tap << 5) + i] = d[(i << 4) + tap];
+            }
         }
+        return d16;
     }
 
     /**
-     * Returns a subarray of an existing array.
-     *
-     * @param array The array to retrieve a subarra from.
-     * @param offs  The offset in the array that corresponds to the first index of the subarray.
-     * @param len   The number of indeces in the subarray.
-     * @return The subarray, which may be of length 0.
+     * Loads the VectorWindow of the <code>src-vector</code> directory by
+     * name, so the decoder builds and runs without the incubator module.
      */
-    private final static float[] subArray(float[] array, int offs, int len) {
-        if (offs + len > array.length) {
-            len = array.length - offs;
+    private static SynthesisWindow loadVectorWindow() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
         }
-        if (len < 0) {
-            len = 0;
+        try {
+            return (SynthesisWindow) Class.forName("javazoom.jlme.decoder.VectorWindow")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled, or no vector of floats on this CPU
+            return null;
         }
-        float[] subarray = new float[len];
-        System.arraycopy(array, offs, subarray, 0, len);
-        return subarray;
     }
 
     /**
      * Reset the synthesis filter.
      */
     public final void reset() {
-        for (int i = 0; i < 512; i++) {
+        for (int i = 0; i < 1024; i++) {
             v1[i] = 0;
             v2[i] = 0;
         }
         //Arrays.fill(samples, 0);
         actual_v = v1;
-        actual_write_pos = 15;
+        actual_write_pos = 512;
     }
 
 
+    /**
+     * Moves the write position as if calculateSamples had been called
+     * <code>calls</code> times, for a skipped frame. The slots of V are not
+     * computed, the next 16 calls replace them.
+     */
+    final void skip(int calls) {
+        actual_write_pos = 512;
+        if ((calls & 1) != 0) {
+            actual_v = (actual_v == v1) ? v2 : v1;
+        }
+    }
+
     public final void calculateSamples(float[] s, SampleBuffer buffer) {
-        samples = s;
-        compute_new_v();
+        compute_new_v(s);
         compute_pcm_samples(buffer);
-        actual_write_pos = (actual_write_pos + 1) & 0xf;
+        // the slots go down V, the 15 still windowed move back up once the bottom is reached
+        if (actual_write_pos == 0) {
+            System.arraycopy(v1, 0, v1, 544, 480);
+            System.arraycopy(v2, 0, v2, 544, 480);
+            actual_write_pos = 512;
+        } else {
+            actual_write_pos -= 32;
+        }
         actual_v = (actual_v == v1) ? v2 : v1;
         //Arrays.fill(samples, 0f);
     }
 
-    /* taken out of compute_new_v */
-
-    static float new_v0, new_v1, new_v2, new_v3, new_v4, new_v5, new_v6, new_v7, new_v8, new_v9, new_v10, new_v11, new_v12, new_v13, new_v14, new_v15, new_v16, new_v17, new_v18, new_v19, new_v20,
-            new_v21, new_v22, new_v23, new_v24, new_v25, new_v26, new_v27, new_v28, new_v29, new_v30, new_v31, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14, p15, pp0, pp1, pp2, pp3, pp4,
-            pp5, pp6, pp7, pp8, pp9, pp10, pp11, pp12, pp13, pp14, pp15;
-    static int loc1, loc2, loc3, loc4, loc5, loc6, loc7, loc8, loc9, loc10, loc11, loc12, loc13, loc14, loc15, loc16, loc17, loc18, loc19, loc20, loc21, loc22, loc23, loc24, loc25, loc26,
-            loc27, loc28, loc29, loc30, loc31, loc32;
-    static float smp1, smp2, smp3, smp4, smp5, smp6, smp7, smp8, smp9, smp10, smp11, smp12, smp13, smp14, smp15, smp16, smp17, smp18, smp19, smp20, smp21, smp22, smp23, smp24, smp25, smp26,
-            smp27, smp28, smp29, smp30, smp31, smp32;
-
     /**
      * Compute new values via a fast cosine transform.
      */
-    private final void compute_new_v() {
-        smp1 = samples[0];
-        smp2 = samples[1];
-        smp3 = samples[2];
-        smp4 = samples[3];
-        smp5 = samples[4];
-        smp6 = samples[5];
-        smp7 = samples[6];
-        smp8 = samples[7];
-        smp9 = samples[8];
-        smp10 = samples[9];
-        smp11 = samples[10];
-        smp12 = samples[11];
-        smp13 = samples[12];
-        smp14 = samples[13];
-        smp15 = samples[14];
-        smp16 = samples[15];
-        smp17 = samples[16];
-        smp18 = samples[17];
-        smp19 = samples[18];
-        smp20 = samples[19];
-        smp21 = samples[20];
-        smp22 = samples[21];
-        smp23 = samples[22];
-        smp24 = samples[23];
-        smp25 = samples[24];
-        smp26 = samples[25];
-        smp27 = samples[26];
-        smp28 = samples[27];
-        smp29 = samples[28];
-        smp30 = samples[29];
-        smp31 = samples[30];
-        smp32 = samples[31];
+    private final void compute_new_v(float[] samples) {
+        float new_v0, new_v1, new_v2, new_v3, new_v4, new_v5, new_v6, new_v7, new_v8, new_v9, new_v10, new_v11, new_v12, new_v13, new_v14, new_v15, new_v16, new_v17, new_v18, new_v19, new_v20,
+                new_v21, new_v22, new_v23, new_v24, new_v25, new_v26, new_v27, new_v28, new_v29, new_v30, new_v31, p0, p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14, p15, pp0, pp1, pp2, pp3, pp4,
+                pp5, pp6, pp7, pp8, pp9, pp10, pp11, pp12, pp13, pp14, pp15;
+        final float smp1 = samples[0];
+        final float smp2 = samples[1];
+        final float smp3 = samples[2];
+        final float smp4 = samples[3];
+        final float smp5 = samples[4];
+        final float smp6 = samples[5];
+        final float smp7 = samples[6];
+        final float smp8 = samples[7];
+        final float smp9 = samples[8];
+        final float smp10 = samples[9];
+        final float smp11 = samples[10];
+        final float smp12 = samples[11];
+        final float smp13 = samples[12];
+        final float smp14 = samples[13];
+        final float smp15 = samples[14];
+        final float smp16 = samples[15];
+        final float smp17 = samples[16];
+        final float smp18 = samples[17];
+        final float smp19 = samples[18];
+        final float smp20 = samples[19];
+        final float smp21 = samples[20];
+        final float smp22 = samples[21];
+        final float smp23 = samples[22];
+        final float smp24 = samples[23];
+        final float smp25 = samples[24];
+        final float smp26 = samples[25];
+        final float smp27 = samples[26];
+        final float smp28 = samples[27];
+        final float smp29 = samples[28];
+        final float smp30 = samples[29];
+        final float smp31 = samples[30];
+        final float smp32 = samples[31];
         p0 = smp1 + smp32;
         p1 = smp2 + smp31;
         p2 = smp3 + smp30;
@@ -440,327 +467,227 @@ final class SynthesisFilter {
          *  45-17
          */
                 = tmp1 - tmp2;
-        loc1 = actual_write_pos;
-        loc2 = 16 + actual_write_pos;
-        loc3 = 32 + actual_write_pos;
-        loc4 = 48 + actual_write_pos;
-        loc5 = 64 + actual_write_pos;
-        loc6 = 80 + actual_write_pos;
-        loc7 = 96 + actual_write_pos;
-        loc8 = 112 + actual_write_pos;
-        loc9 = 128 + actual_write_pos;
-        loc10 = 144 + actual_write_pos;
-        loc11 = 160 + actual_write_pos;
-        loc12 = 176 + actual_write_pos;
-        loc13 = 192 + actual_write_pos;
-        loc14 = 208 + actual_write_pos;
-        loc15 = 224 + actual_write_pos;
-        loc16 = 240 + actual_write_pos;
-        loc17 = 256 + actual_write_pos;
-        loc18 = 272 + actual_write_pos;
-        loc19 = 288 + actual_write_pos;
-        loc20 = 304 + actual_write_pos;
-        loc21 = 320 + actual_write_pos;
-        loc22 = 336 + actual_write_pos;
-        loc23 = 352 + actual_write_pos;
-        loc24 = 368 + actual_write_pos;
-        loc25 = 384 + actual_write_pos;
-        loc26 = 400 + actual_write_pos;
-        loc27 = 416 + actual_write_pos;
-        loc28 = 432 + actual_write_pos;
-        loc29 = 448 + actual_write_pos;
-        loc30 = 464 + actual_write_pos;
-        loc31 = 480 + actual_write_pos;
-        loc32 = 496 + actual_write_pos;
+        // the slot of the write position, the older slots follow it
+        final int loc = actual_write_pos;
         float dest[] = actual_v;
-        dest[loc1] = new_v0;
-        dest[loc2] = new_v1;
-        dest[loc3] = new_v2;
-        dest[loc4] = new_v3;
-        dest[loc5] = new_v4;
-        dest[loc6] = new_v5;
-        dest[loc7] = new_v6;
-        dest[loc8] = new_v7;
-        dest[loc9] = new_v8;
-        dest[loc10] = new_v9;
-        dest[loc11] = new_v10;
-        dest[loc12] = new_v11;
-        dest[loc13] = new_v12;
-        dest[loc14] = new_v13;
-        dest[loc15] = new_v14;
-        dest[loc16] = new_v15;
-        dest[loc17] = 0.0f;
-        dest[loc18] = -new_v15;
-        dest[loc19] = -new_v14;
-        dest[loc20] = -new_v13;
-        dest[loc21] = -new_v12;
-        dest[loc22] = -new_v11;
-        dest[loc23] = -new_v10;
-        dest[loc24] = -new_v9;
-        dest[loc25] = -new_v8;
-        dest[loc26] = -new_v7;
-        dest[loc27] = -new_v6;
-        dest[loc28] = -new_v5;
-        dest[loc29] = -new_v4;
-        dest[loc30] = -new_v3;
-        dest[loc31] = -new_v2;
-        dest[loc32] = -new_v1;
+        dest[loc] = new_v0;
+        dest[loc + 1] = new_v1;
+        dest[loc + 2] = new_v2;
+        dest[loc + 3] = new_v3;
+        dest[loc + 4] = new_v4;
+        dest[loc + 5] = new_v5;
+        dest[loc + 6] = new_v6;
+        dest[loc + 7] = new_v7;
+        dest[loc + 8] = new_v8;
+        dest[loc + 9] = new_v9;
+        dest[loc + 10] = new_v10;
+        dest[loc + 11] = new_v11;
+        dest[loc + 12] = new_v12;
+        dest[loc + 13] = new_v13;
+        dest[loc + 14] = new_v14;
+        dest[loc + 15] = new_v15;
+        dest[loc + 16] = 0.0f;
+        dest[loc + 17] = -new_v15;
+        dest[loc + 18] = -new_v14;
+        dest[loc + 19] = -new_v13;
+        dest[loc + 20] = -new_v12;
+        dest[loc + 21] = -new_v11;
+        dest[loc + 22] = -new_v10;
+        dest[loc + 23] = -new_v9;
+        dest[loc + 24] = -new_v8;
+        dest[loc + 25] = -new_v7;
+        dest[loc + 26] = -new_v6;
+        dest[loc + 27] = -new_v5;
+        dest[loc + 28] = -new_v4;
+        dest[loc + 29] = -new_v3;
+        dest[loc + 30] = -new_v2;
+        dest[loc + 31] = -new_v1;
         dest = (dest == v1) ? v2 : v1;
-        dest[loc1] = -new_v0;
-        dest[loc2] = new_v16;
-        dest[loc3] = new_v17;
-        dest[loc4] = new_v18;
-        dest[loc5] = new_v19;
-        dest[loc6] = new_v20;
-        dest[loc7] = new_v21;
-        dest[loc8] = new_v22;
-        dest[loc9] = new_v23;
-        dest[loc10] = new_v24;
-        dest[loc11] = new_v25;
-        dest[loc12] = new_v26;
-        dest[loc13] = new_v27;
-        dest[loc14] = new_v28;
-        dest[loc15] = new_v29;
-        dest[loc16] = new_v30;
-        dest[loc17] = new_v31;
-        dest[loc18] = new_v30;
-        dest[loc19] = new_v29;
-        dest[loc20] = new_v28;
-        dest[loc21] = new_v27;
-        dest[loc22] = new_v26;
-        dest[loc23] = new_v25;
-        dest[loc24] = new_v24;
-        dest[loc25] = new_v23;
-        dest[loc26] = new_v22;
-        dest[loc27] = new_v21;
-        dest[loc28] = new_v20;
-        dest[loc29] = new_v19;
-        dest[loc30] = new_v18;
-        dest[loc31] = new_v17;
-        dest[loc32] = new_v16;
+        dest[loc] = -new_v0;
+        dest[loc + 1] = new_v16;
+        dest[loc + 2] = new_v17;
+        dest[loc + 3] = new_v18;
+        dest[loc + 4] = new_v19;
+        dest[loc + 5] = new_v20;
+        dest[loc + 6] = new_v21;
+        dest[loc + 7] = new_v22;
+        dest[loc + 8] = new_v23;
+        dest[loc + 9] = new_v24;
+        dest[loc + 10] = new_v25;
+        dest[loc + 11] = new_v26;
+        dest[loc + 12] = new_v27;
+        dest[loc + 13] = new_v28;
+        dest[loc + 14] = new_v29;
+        dest[loc + 15] = new_v30;
+        dest[loc + 16] = new_v31;
+        dest[loc + 17] = new_v30;
+        dest[loc + 18] = new_v29;
+        dest[loc + 19] = new_v28;
+        dest[loc + 20] = new_v27;
+        dest[loc + 21] = new_v26;
+        dest[loc + 22] = new_v25;
+        dest[loc + 23] = new_v24;
+        dest[loc + 24] = new_v23;
+        dest[loc + 25] = new_v22;
+        dest[loc + 26] = new_v21;
+        dest[loc + 27] = new_v20;
+        dest[loc + 28] = new_v19;
+        dest[loc + 29] = new_v18;
+        dest[loc + 30] = new_v17;
+        dest[loc + 31] = new_v16;
     }
 
-    static int dvp, pos, channels;
-    static float temp;
+    private final float[] sums = new float[32];
 
+    /**
+     * Windows the 16 slots of V into 32 samples. The slots from the write
+     * position upwards follow each other in V, each adds its tap to the
+     * sums of several samples at once, in the order of the window. A
+     * {@link FloatSampleBuffer} gets the sums as they are, the others get
+     * them scaled and clipped to 16 bits, as bytes or as the shorts of a
+     * {@link ShortSampleBuffer}.
+     */
     private final void compute_pcm_samples(SampleBuffer buff) {
-        dvp = 0;
-        pos = buff.getBufferIndex(channel);
-        channels = buff.getBufferChannelCount();
-        final byte[] bytes = buff.getBuffer();
+        final float[] sum = sums;
+        final int base = actual_write_pos;
+        if (step != OutputRate.FULL_RATE) {
+            window(actual_v, base, sum, step);
+        } else if (VECTOR_WINDOW != null) {
+            VECTOR_WINDOW.window(actual_v, base, d16, sum);
+        } else {
+            window(actual_v, base, sum);
+        }
 
-        switch (actual_write_pos) {
-            case 0:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[dvp] * dp[0]) + (actual_v[15 + dvp] * dp[1]) + (actual_v[14 + dvp] * dp[2]) + (actual_v[13 + dvp] * dp[3]) + (actual_v[12 + dvp] * dp[4]) +
-                            (actual_v[11 + dvp] * dp[5]) + (actual_v[10 + dvp] * dp[6]) + (actual_v[9 + dvp] * dp[7]) + (actual_v[8 + dvp] * dp[8]) + (actual_v[7 + dvp] * dp[9]) + (actual_v[6 + dvp] * dp[10]) +
-                            (actual_v[5 + dvp] * dp[11]) + (actual_v[4 + dvp] * dp[12]) + (actual_v[3 + dvp] * dp[13]) + (actual_v[2 + dvp] * dp[14]) + (actual_v[1 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 1:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[1 + dvp] * dp[0]) + (actual_v[dvp] * dp[1]) + (actual_v[15 + dvp] * dp[2]) + (actual_v[14 + dvp] * dp[3]) + (actual_v[13 + dvp] * dp[4]) +
-                            (actual_v[12 + dvp] * dp[5]) + (actual_v[11 + dvp] * dp[6]) + (actual_v[10 + dvp] * dp[7]) + (actual_v[9 + dvp] * dp[8]) + (actual_v[8 + dvp] * dp[9]) + (actual_v[7 + dvp] * dp[10]) +
-                            (actual_v[6 + dvp] * dp[11]) + (actual_v[5 + dvp] * dp[12]) + (actual_v[4 + dvp] * dp[13]) + (actual_v[3 + dvp] * dp[14]) + (actual_v[2 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 2:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[2 + dvp] * dp[0]) + (actual_v[1 + dvp] * dp[1]) + (actual_v[dvp] * dp[2]) + (actual_v[15 + dvp] * dp[3]) + (actual_v[14 + dvp] * dp[4]) +
-                            (actual_v[13 + dvp] * dp[5]) + (actual_v[12 + dvp] * dp[6]) + (actual_v[11 + dvp] * dp[7]) + (actual_v[10 + dvp] * dp[8]) + (actual_v[9 + dvp] * dp[9]) + (actual_v[8 + dvp] * dp[10]) +
-                            (actual_v[7 + dvp] * dp[11]) + (actual_v[6 + dvp] * dp[12]) + (actual_v[5 + dvp] * dp[13]) + (actual_v[4 + dvp] * dp[14]) + (actual_v[3 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 3:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[3 + dvp] * dp[0]) + (actual_v[2 + dvp] * dp[1]) + (actual_v[1 + dvp] * dp[2]) + (actual_v[dvp] * dp[3]) + (actual_v[15 + dvp] * dp[4]) +
-                            (actual_v[14 + dvp] * dp[5]) + (actual_v[13 + dvp] * dp[6]) + (actual_v[12 + dvp] * dp[7]) + (actual_v[11 + dvp] * dp[8]) + (actual_v[10 + dvp] * dp[9]) + (actual_v[9 + dvp] * dp[10]) +
-                            (actual_v[8 + dvp] * dp[11]) + (actual_v[7 + dvp] * dp[12]) + (actual_v[6 + dvp] * dp[13]) + (actual_v[5 + dvp] * dp[14]) + (actual_v[4 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 4:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[4 + dvp] * dp[0]) + (actual_v[3 + dvp] * dp[1]) + (actual_v[2 + dvp] * dp[2]) + (actual_v[1 + dvp] * dp[3]) + (actual_v[dvp] * dp[4]) +
-                            (actual_v[15 + dvp] * dp[5]) + (actual_v[14 + dvp] * dp[6]) + (actual_v[13 + dvp] * dp[7]) + (actual_v[12 + dvp] * dp[8]) + (actual_v[11 + dvp] * dp[9]) +
-                            (actual_v[10 + dvp] * dp[10]) + (actual_v[9 + dvp] * dp[11]) + (actual_v[8 + dvp] * dp[12]) + (actual_v[7 + dvp] * dp[13]) + (actual_v[6 + dvp] * dp[14]) +
-                            (actual_v[5 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 5:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[5 + dvp] * dp[0]) + (actual_v[4 + dvp] * dp[1]) + (actual_v[3 + dvp] * dp[2]) + (actual_v[2 + dvp] * dp[3]) + (actual_v[1 + dvp] * dp[4]) +
-                            (actual_v[dvp] * dp[5]) + (actual_v[15 + dvp] * dp[6]) + (actual_v[14 + dvp] * dp[7]) + (actual_v[13 + dvp] * dp[8]) + (actual_v[12 + dvp] * dp[9]) + (actual_v[11 + dvp] * dp[10]) +
-                            (actual_v[10 + dvp] * dp[11]) + (actual_v[9 + dvp] * dp[12]) + (actual_v[8 + dvp] * dp[13]) + (actual_v[7 + dvp] * dp[14]) + (actual_v[6 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 6:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[6 + dvp] * dp[0]) + (actual_v[5 + dvp] * dp[1]) + (actual_v[4 + dvp] * dp[2]) + (actual_v[3 + dvp] * dp[3]) + (actual_v[2 + dvp] * dp[4]) +
-                            (actual_v[1 + dvp] * dp[5]) + (actual_v[dvp] * dp[6]) + (actual_v[15 + dvp] * dp[7]) + (actual_v[14 + dvp] * dp[8]) + (actual_v[13 + dvp] * dp[9]) + (actual_v[12 + dvp] * dp[10]) +
-                            (actual_v[11 + dvp] * dp[11]) + (actual_v[10 + dvp] * dp[12]) + (actual_v[9 + dvp] * dp[13]) + (actual_v[8 + dvp] * dp[14]) + (actual_v[7 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 7:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[7 + dvp] * dp[0]) + (actual_v[6 + dvp] * dp[1]) + (actual_v[5 + dvp] * dp[2]) + (actual_v[4 + dvp] * dp[3]) + (actual_v[3 + dvp] * dp[4]) +
-                            (actual_v[2 + dvp] * dp[5]) + (actual_v[1 + dvp] * dp[6]) + (actual_v[dvp] * dp[7]) + (actual_v[15 + dvp] * dp[8]) + (actual_v[14 + dvp] * dp[9]) + (actual_v[13 + dvp] * dp[10]) +
-                            (actual_v[12 + dvp] * dp[11]) + (actual_v[11 + dvp] * dp[12]) + (actual_v[10 + dvp] * dp[13]) + (actual_v[9 + dvp] * dp[14]) + (actual_v[8 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 8:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[8 + dvp] * dp[0]) + (actual_v[7 + dvp] * dp[1]) + (actual_v[6 + dvp] * dp[2]) + (actual_v[5 + dvp] * dp[3]) + (actual_v[4 + dvp] * dp[4]) +
-                            (actual_v[3 + dvp] * dp[5]) + (actual_v[2 + dvp] * dp[6]) + (actual_v[1 + dvp] * dp[7]) + (actual_v[dvp] * dp[8]) + (actual_v[15 + dvp] * dp[9]) + (actual_v[14 + dvp] * dp[10]) +
-                            (actual_v[13 + dvp] * dp[11]) + (actual_v[12 + dvp] * dp[12]) + (actual_v[11 + dvp] * dp[13]) + (actual_v[10 + dvp] * dp[14]) + (actual_v[9 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 9:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[9 + dvp] * dp[0]) + (actual_v[8 + dvp] * dp[1]) + (actual_v[7 + dvp] * dp[2]) + (actual_v[6 + dvp] * dp[3]) + (actual_v[5 + dvp] * dp[4]) +
-                            (actual_v[4 + dvp] * dp[5]) + (actual_v[3 + dvp] * dp[6]) + (actual_v[2 + dvp] * dp[7]) + (actual_v[1 + dvp] * dp[8]) + (actual_v[dvp] * dp[9]) + (actual_v[15 + dvp] * dp[10]) +
-                            (actual_v[14 + dvp] * dp[11]) + (actual_v[13 + dvp] * dp[12]) + (actual_v[12 + dvp] * dp[13]) + (actual_v[11 + dvp] * dp[14]) + (actual_v[10 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 10:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[10 + dvp] * dp[0]) + (actual_v[9 + dvp] * dp[1]) + (actual_v[8 + dvp] * dp[2]) + (actual_v[7 + dvp] * dp[3]) + (actual_v[6 + dvp] * dp[4]) +
-                            (actual_v[5 + dvp] * dp[5]) + (actual_v[4 + dvp] * dp[6]) + (actual_v[3 + dvp] * dp[7]) + (actual_v[2 + dvp] * dp[8]) + (actual_v[1 + dvp] * dp[9]) + (actual_v[dvp] * dp[10]) +
-                            (actual_v[15 + dvp] * dp[11]) + (actual_v[14 + dvp] * dp[12]) + (actual_v[13 + dvp] * dp[13]) + (actual_v[12 + dvp] * dp[14]) + (actual_v[11 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 11:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[11 + dvp] * dp[0]) + (actual_v[10 + dvp] * dp[1]) + (actual_v[9 + dvp] * dp[2]) + (actual_v[8 + dvp] * dp[3]) + (actual_v[7 + dvp] * dp[4]) +
-                            (actual_v[6 + dvp] * dp[5]) + (actual_v[5 + dvp] * dp[6]) + (actual_v[4 + dvp] * dp[7]) + (actual_v[3 + dvp] * dp[8]) + (actual_v[2 + dvp] * dp[9]) + (actual_v[1 + dvp] * dp[10]) +
-                            (actual_v[dvp] * dp[11]) + (actual_v[15 + dvp] * dp[12]) + (actual_v[14 + dvp] * dp[13]) + (actual_v[13 + dvp] * dp[14]) + (actual_v[12 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 12:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[12 + dvp] * dp[0]) + (actual_v[11 + dvp] * dp[1]) + (actual_v[10 + dvp] * dp[2]) + (actual_v[9 + dvp] * dp[3]) + (actual_v[8 + dvp] * dp[4]) +
-                            (actual_v[7 + dvp] * dp[5]) + (actual_v[6 + dvp] * dp[6]) + (actual_v[5 + dvp] * dp[7]) + (actual_v[4 + dvp] * dp[8]) + (actual_v[3 + dvp] * dp[9]) + (actual_v[2 + dvp] * dp[10]) +
-                            (actual_v[1 + dvp] * dp[11]) + (actual_v[0 + dvp] * dp[12]) + (actual_v[15 + dvp] * dp[13]) + (actual_v[14 + dvp] * dp[14]) + (actual_v[13 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 13:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[13 + dvp] * dp[0]) + (actual_v[12 + dvp] * dp[1]) + (actual_v[11 + dvp] * dp[2]) + (actual_v[10 + dvp] * dp[3]) + (actual_v[9 + dvp] * dp[4]) +
-                            (actual_v[8 + dvp] * dp[5]) + (actual_v[7 + dvp] * dp[6]) + (actual_v[6 + dvp] * dp[7]) + (actual_v[5 + dvp] * dp[8]) + (actual_v[4 + dvp] * dp[9]) + (actual_v[3 + dvp] * dp[10]) +
-                            (actual_v[2 + dvp] * dp[11]) + (actual_v[1 + dvp] * dp[12]) + (actual_v[dvp] * dp[13]) + (actual_v[15 + dvp] * dp[14]) + (actual_v[14 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 14:
-                for (int i = 0; i < 32; i++) {
-                    final float[] dp = d16[i];
-                    temp = (float) (((actual_v[14 + dvp] * dp[0]) + (actual_v[13 + dvp] * dp[1]) + (actual_v[12 + dvp] * dp[2]) + (actual_v[11 + dvp] * dp[3]) + (actual_v[10 + dvp] * dp[4]) +
-                            (actual_v[9 + dvp] * dp[5]) + (actual_v[8 + dvp] * dp[6]) + (actual_v[7 + dvp] * dp[7]) + (actual_v[6 + dvp] * dp[8]) + (actual_v[5 + dvp] * dp[9]) + (actual_v[4 + dvp] * dp[10]) +
-                            (actual_v[3 + dvp] * dp[11]) + (actual_v[2 + dvp] * dp[12]) + (actual_v[1 + dvp] * dp[13]) + (actual_v[dvp] * dp[14]) + (actual_v[15 + dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
-            case 15:
-                for (int i = 0; i < 32; i++) {
-                    final float dp[] = d16[i];
-                    temp = (float) (((actual_v[15 + dvp] * dp[0]) + (actual_v[14 + dvp] * dp[1]) + (actual_v[13 + dvp] * dp[2]) + (actual_v[12 + dvp] * dp[3]) + (actual_v[11 + dvp] * dp[4]) +
-                            (actual_v[10 + dvp] * dp[5]) + (actual_v[9 + dvp] * dp[6]) + (actual_v[8 + dvp] * dp[7]) + (actual_v[7 + dvp] * dp[8]) + (actual_v[6 + dvp] * dp[9]) + (actual_v[5 + dvp] * dp[10]) +
-                            (actual_v[4 + dvp] * dp[11]) + (actual_v[3 + dvp] * dp[12]) + (actual_v[2 + dvp] * dp[13]) + (actual_v[1 + dvp] * dp[14]) + (actual_v[dvp] * dp[15])) * scalefactor);
-                    short s = (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
-                    bytes[pos++] = (byte) s;
-                    bytes[pos] = (byte) (s >>> 8);
-                    pos += channels;
-                    dvp += 16;
-                }
-                break;
+        final int count = 32 / step;
+        if (buff instanceof FloatSampleBuffer) {
+            ((FloatSampleBuffer) buff).append(channel, sum, count);
+            return;
+        }
+        int pos = buff.getBufferIndex(channel);
+        if (buff instanceof ShortSampleBuffer) {
+            final ShortBuffer shorts = ((ShortSampleBuffer) buff).getShortBuffer();
+            final int channels = buff.getChannelCount();
+            for (int i = 0; i < count; i++) {
+                shorts.put(pos, toShort(sum[i]));
+                pos += channels;
+            }
+            buff.setBufferIndex(channel, pos);
+            return;
         }
+        // one store for the two bytes of a sample, the index counts bytes
+        final ShortBuffer samples = buff.getSamples();
+        final int channels = buff.getChannelCount();
+        int index = pos >> 1;
+        for (int i = 0; i < count; i++) {
+            samples.put(index, toShort(sum[i]));
+            index += channels;
+        }
+        buff.setBufferIndex(channel, index << 1);
+    }
 
-        buff.setBufferIndex(channel, pos);
+    /**
+     * @return The sample scaled to 16 bits and clipped.
+     */
+    private short toShort(float sample) {
+        final float temp = sample * scalefactor;
+        return (short) (temp > 32767.0f ? 32767.0f : (temp < -32767.0f ? -32767.0f : temp));
+    }
+
+    /**
+     * The windowing without the Vector API, 16 samples at once in locals.
+     */
+    private static void window(float[] v, int base, float[] sum) {
+        for (int i = 0; i < 32; i += 16) {
+            float a0 = v[base + i] * d16[i];
+            float a1 = v[base + i + 1] * d16[i + 1];
+            float a2 = v[base + i + 2] * d16[i + 2];
+            float a3 = v[base + i + 3] * d16[i + 3];
+            float a4 = v[base + i + 4] * d16[i + 4];
+            float a5 = v[base + i + 5] * d16[i + 5];
+            float a6 = v[base + i + 6] * d16[i + 6];
+            float a7 = v[base + i + 7] * d16[i + 7];
+            float a8 = v[base + i + 8] * d16[i + 8];
+            float a9 = v[base + i + 9] * d16[i + 9];
+            float a10 = v[base + i + 10] * d16[i + 10];
+            float a11 = v[base + i + 11] * d16[i + 11];
+            float a12 = v[base + i + 12] * d16[i + 12];
+            float a13 = v[base + i + 13] * d16[i + 13];
+            float a14 = v[base + i + 14] * d16[i + 14];
+            float a15 = v[base + i + 15] * d16[i + 15];
+            for (int dp = 32; dp < 512; dp += 32) {
+                final int slot = base + dp;
+                a0 += v[slot + i] * d16[dp + i];
+                a1 += v[slot + i + 1] * d16[dp + i + 1];
+                a2 += v[slot + i + 2] * d16[dp + i + 2];
+                a3 += v[slot + i + 3] * d16[dp + i + 3];
+                a4 += v[slot + i + 4] * d16[dp + i + 4];
+                a5 += v[slot + i + 5] * d16[dp + i + 5];
+                a6 += v[slot + i + 6] * d16[dp + i + 6];
+                a7 += v[slot + i + 7] * d16[dp + i + 7];
+                a8 += v[slot + i + 8] * d16[dp + i + 8];
+                a9 += v[slot + i + 9] * d16[dp + i + 9];
+                a10 += v[slot + i + 10] * d16[dp + i + 10];
+                a11 += v[slot + i + 11] * d16[dp + i + 11];
+                a12 += v[slot + i + 12] * d16[dp + i + 12];
+                a13 += v[slot + i + 13] * d16[dp + i + 13];
+                a14 += v[slot + i + 14] * d16[dp + i + 14];
+                a15 += v[slot + i + 15] * d16[dp + i + 15];
+            }
+            sum[i] = a0;
+            sum[i + 1] = a1;
+            sum[i + 2] = a2;
+            sum[i + 3] = a3;
+            sum[i + 4] = a4;
+            sum[i + 5] = a5;
+            sum[i + 6] = a6;
+            sum[i + 7] = a7;
+            sum[i + 8] = a8;
+            sum[i + 9] = a9;
+            sum[i + 10] = a10;
+            sum[i + 11] = a11;
+            sum[i + 12] = a12;
+            sum[i + 13] = a13;
+            sum[i + 14] = a14;
+            sum[i + 15] = a15;
+        }
+    }
+
+    /**
+     * The windowing of one sample out of <code>step</code>, for a reduced
+     * output rate, 8 samples at once in locals. The sums are packed at the
+     * start of <code>sum</code>.
+     */
+    private static void window(float[] v, int base, float[] sum, int step) {
+        final int s1 = step, s2 = 2 * step, s3 = 3 * step, s4 = 4 * step, s5 = 5 * step, s6 = 6 * step, s7 = 7 * step;
+        for (int i = 0, j = 0; i < 32; i += 8 * step, j += 8) {
+            float a0 = v[base + i] * d16[i];
+            float a1 = v[base + i + s1] * d16[i + s1];
+            float a2 = v[base + i + s2] * d16[i + s2];
+            float a3 = v[base + i + s3] * d16[i + s3];
+            float a4 = v[base + i + s4] * d16[i + s4];
+            float a5 = v[base + i + s5] * d16[i + s5];
+            float a6 = v[base + i + s6] * d16[i + s6];
+            float a7 = v[base + i + s7] * d16[i + s7];
+            for (int dp = 32; dp < 512; dp += 32) {
+                final int slot = base + dp + i;
+                final int tap = dp + i;
+                a0 += v[slot] * d16[tap];
+                a1 += v[slot + s1] * d16[tap + s1];
+                a2 += v[slot + s2] * d16[tap + s2];
+                a3 += v[slot + s3] * d16[tap + s3];
+                a4 += v[slot + s4] * d16[tap + s4];
+                a5 += v[slot + s5] * d16[tap + s5];
+                a6 += v[slot + s6] * d16[tap + s6];
+                a7 += v[slot + s7] * d16[tap + s7];
+            }
+            sum[j] = a0;
+            sum[j + 1] = a1;
+            sum[j + 2] = a2;
+            sum[j + 3] = a3;
+            sum[j + 4] = a4;
+            sum[j + 5] = a5;
+            sum[j + 6] = a6;
+            sum[j + 7] = a7;
+        }
     }
 }
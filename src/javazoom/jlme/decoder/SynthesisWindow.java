@@ -0,0 +1,21 @@
+package javazoom.jlme.decoder;
+
+/**
+ * A windowing of {@link SynthesisFilter} from outside the sources of the
+ * decoder, such as the {@code VectorWindow} of the <code>src-vector</code>
+ * directory, which is loaded by name only if its module is present.
+ */
+interface SynthesisWindow {
+
+    /**
+     * Sums the 16 taps of the window for the 32 samples, tap after tap and
+     * without fused multiply-add, so the sums are the ones of the scalar
+     * windowing.
+     *
+     * @param v    The slots of V, 32 values each.
+     * @param base The slot of the write position, the older slots follow it.
+     * @param d16  The window, by taps.
+     * @param sum  The 32 sums.
+     */
+    void window(float[] v, int base, float[] d16, float[] sum);
+}
@@ -0,0 +1,328 @@
+package javazoom.jlme.decoder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * The metadata an encoder writes in the first frame of a file, in place of
+ * audio: the Xing header of the VBR files, or the Info header with the same
+ * layout for the CBR files, often followed by the LAME tag, or the VBRI
+ * header of the Fraunhofer encoder.
+ * <p>
+ * The header tells the number of frames and bytes of the file, so its
+ * duration is known without scanning it, and its table of contents maps a
+ * sample to an approximate byte offset, used by
+ * {@link Decoder#seek(VbrHeader, long)}.
+ * <p>
+ * The frame holding the header is decoded as silence, it is not counted in
+ * {@link #getFrameCount()}.
+ */
+public final class VbrHeader {
+
+    public enum Type {
+        XING, INFO, VBRI
+    }
+
+    private static final int XING = 0x58696E67;
+    private static final int INFO = 0x496E666F;
+    private static final int VBRI = 0x56425249;
+
+    private static final int FRAMES_FLAG = 0x1;
+    private static final int BYTES_FLAG = 0x2;
+    private static final int TOC_FLAG = 0x4;
+    private static final int QUALITY_FLAG = 0x8;
+
+    /**
+     * Offset of the VBRI header in the frame, after the header and 32 bytes.
+     */
+    private static final int VBRI_OFFSET = 32;
+
+    private final Type type;
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    private final long firstFrameOffset;
+    private final int firstFrameLength;
+    private int frameCount = -1;
+    private long byteCount = -1;
+    private int quality = -1;
+    /**
+     * The Xing table, the byte offset of each percent of the file in 1/256
+     * of the byte count.
+     */
+    private int[] toc;
+    /**
+     * The VBRI table, the byte offset from the first frame of each of its
+     * entries, one every tocFrames frames.
+     */
+    private long[] positions;
+    private int tocFrames;
+    private String encoder;
+    private int encoderDelay = -1;
+    private int encoderPadding = -1;
+
+    private VbrHeader(Type type, Header header, long firstFrameOffset) {
+        this.type = type;
+        this.sampleRate = header.frequency();
+        this.samplesPerFrame = header.version() == Header.MPEG1 ? 1152 : 576;
+        this.firstFrameOffset = firstFrameOffset;
+        this.firstFrameLength = header.getFrameLengthInBytes();
+    }
+
+    /**
+     * Reads the header in the first frame of a file, without decoding it.
+     *
+     * @return The header, or null if the first frame is audio.
+     * @throws IOException If the file cannot be read.
+     */
+    public static VbrHeader read(Path file) throws IOException {
+        final BitStream stream = new BitStream(file);
+        try {
+            stream.readFrame();
+            return stream.getVbrHeader();
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Looks for a header in the bytes of the first frame, after its 4 bytes
+     * of header.
+     *
+     * @param data             The frame, without its header.
+     * @param length           The number of bytes of the frame in data.
+     * @param header           The header of the frame.
+     * @param firstFrameOffset The offset in the file of the frame, or -1 if unknown.
+     * @return The header, or null if the frame is audio.
+     */
+    static VbrHeader parse(byte[] data, int length, Header header, long firstFrameOffset) {
+        // the Xing header follows the side information, the CRC is not counted
+        final boolean mono = header.mode() == Header.SINGLE_CHANNEL;
+        final int xing = header.version() == Header.MPEG1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+        if (xing + 8 <= length) {
+            final int id = getInt(data, xing);
+            if (id == XING || id == INFO) {
+                final VbrHeader vbr = new VbrHeader(id == XING ? Type.XING : Type.INFO, header, firstFrameOffset);
+                vbr.parseXing(data, xing + 4, length);
+                return vbr;
+            }
+        }
+        if (VBRI_OFFSET + 26 <= length && getInt(data, VBRI_OFFSET) == VBRI) {
+            final VbrHeader vbr = new VbrHeader(Type.VBRI, header, firstFrameOffset);
+            vbr.parseVbri(data, VBRI_OFFSET + 4, length);
+            return vbr;
+        }
+        return null;
+    }
+
+    private void parseXing(byte[] data, int pos, int length) {
+        final int flags = getInt(data, pos);
+        pos += 4;
+        if ((flags & FRAMES_FLAG) != 0) {
+            if (pos + 4 > length) {
+                return;
+            }
+            frameCount = getInt(data, pos);
+            pos += 4;
+        }
+        if ((flags & BYTES_FLAG) != 0) {
+            if (pos + 4 > length) {
+                return;
+            }
+            byteCount = getInt(data, pos) & 0xFFFFFFFFL;
+            pos += 4;
+        }
+        if ((flags & TOC_FLAG) != 0) {
+            if (pos + 100 > length) {
+                return;
+            }
+            toc = new int[100];
+            for (int i = 0; i < 100; i++) {
+                toc[i] = data[pos + i] & 0xFF;
+            }
+            pos += 100;
+        }
+        if ((flags & QUALITY_FLAG) != 0) {
+            if (pos + 4 > length) {
+                return;
+            }
+            quality = getInt(data, pos);
+            pos += 4;
+        }
+        // The LAME tag: the version of the encoder in 9 bytes, then at 21
+        // the encoder delay and padding in 12 bits each.
+        if (pos + 24 <= length && data[pos] == 'L' && data[pos + 1] == 'A' && data[pos + 2] == 'M' && data[pos + 3] == 'E') {
+            encoder = new String(data, pos, 9, StandardCharsets.US_ASCII).trim();
+            final int delay = (data[pos + 21] & 0xFF) << 16 | (data[pos + 22] & 0xFF) << 8 | data[pos + 23] & 0xFF;
+            encoderDelay = delay >>> 12;
+            encoderPadding = delay & 0xFFF;
+        }
+    }
+
+    /**
+     * The VBRI header: version, delay, quality, bytes, frames, then the
+     * number of entries of the table, their scale, the size of an entry in
+     * bytes and the frames per entry, in big endian order.
+     */
+    private void parseVbri(byte[] data, int pos, int length) {
+        quality = getShort(data, pos + 4);
+        byteCount = getInt(data, pos + 6) & 0xFFFFFFFFL;
+        frameCount = getInt(data, pos + 10);
+        final int entries = getShort(data, pos + 14);
+        final int scale = getShort(data, pos + 16);
+        final int entrySize = getShort(data, pos + 18);
+        tocFrames = getShort(data, pos + 20);
+        pos += 22;
+        if (entries == 0 || entrySize < 1 || entrySize > 4 || tocFrames == 0 || pos + entries * entrySize > length) {
+            return;
+        }
+        // the first entry starts after the frame of the header
+        positions = new long[entries + 1];
+        long position = firstFrameLength;
+        for (int i = 0; i <= entries; i++) {
+            positions[i] = position;
+            if (i < entries) {
+                int size = 0;
+                for (int j = 0; j < entrySize; j++) {
+                    size = (size << 8) | (data[pos++] & 0xFF);
+                }
+                position += (long) size * scale;
+            }
+        }
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | b[off + 3] & 0xFF;
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (b[off] & 0xFF) << 8 | b[off + 1] & 0xFF;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return False for the Info header of a CBR file.
+     */
+    public boolean isVbr() {
+        return type != Type.INFO;
+    }
+
+    /**
+     * @return The number of audio frames, or -1 if unknown.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return The number of bytes of the audio, this frame included, or -1 if unknown.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return The quality of the encoding, from 0 the best to 100, or -1 if unknown.
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * @return The encoder and its version, for example "LAME3.100", or null without a LAME tag.
+     */
+    public String getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * @return The samples added by the encoder at the start, or -1 without a LAME tag.
+     */
+    public int getEncoderDelay() {
+        return encoderDelay;
+    }
+
+    /**
+     * @return The samples added by the encoder at the end, or -1 without a LAME tag.
+     */
+    public int getEncoderPadding() {
+        return encoderPadding;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    /**
+     * @return The number of samples per channel of the audio frames, or -1 if unknown.
+     */
+    public long getSampleCount() {
+        return frameCount < 0 ? -1 : (long) frameCount * samplesPerFrame;
+    }
+
+    /**
+     * @return The duration of the audio frames in milliseconds, or -1 if unknown.
+     */
+    public long getDurationMillis() {
+        return frameCount < 0 ? -1 : getSampleCount() * 1_000 / sampleRate;
+    }
+
+    /**
+     * @return The offset in the file of the frame holding the header, or -1 if unknown.
+     */
+    public long getFirstFrameOffset() {
+        return firstFrameOffset;
+    }
+
+    /**
+     * @return True if the header has a table of contents and the counts to use it.
+     */
+    public boolean hasToc() {
+        return frameCount > 0 && (toc != null && byteCount > 0 || positions != null);
+    }
+
+    /**
+     * Estimates the position of a sample with the table of contents. The
+     * position is not a frame header, the decoder syncs on the next one.
+     *
+     * @param sampleOffset The sample wanted, per channel.
+     * @return The offset in the file near the frame holding the sample.
+     * @throws IllegalStateException If there is no table of contents or the offset of the first frame is unknown.
+     */
+    public long getByteOffset(long sampleOffset) {
+        if (!hasToc() || firstFrameOffset < 0) {
+            throw new IllegalStateException("The position of the sample is unknown.");
+        }
+        final long sampleCount = getSampleCount();
+        final double fraction = Math.max(0, Math.min(sampleOffset, sampleCount)) / (double) sampleCount;
+        final long position;
+        if (toc != null) {
+            final double percent = fraction * 100;
+            final int i = Math.min((int) percent, 99);
+            final double a = toc[i];
+            final double b = i == 99 ? 256 : toc[i + 1];
+            final double scaled = a + (b - a) * (percent - i);
+            position = Math.max(firstFrameLength, Math.min((long) (scaled / 256 * byteCount), byteCount - 1));
+        } else {
+            final double entry = fraction * frameCount / tocFrames;
+            final int i = Math.min((int) entry, positions.length - 2);
+            final double a = positions[i];
+            final double b = positions[i + 1];
+            position = (long) (a + (b - a) * Math.min(entry - i, 1));
+        }
+        return firstFrameOffset + position;
+    }
+
+    @Override
+    public String toString() {
+        return type + " frames=" + frameCount + " bytes=" + byteCount + " toc=" + hasToc()
+                + (encoder == null ? "" : " encoder=" + encoder + " delay=" + encoderDelay + " padding=" + encoderPadding);
+    }
+}
@@ -0,0 +1,155 @@
+package javazoom.jlme.spi;
+
+import javazoom.jlme.decoder.BitStream;
+import javazoom.jlme.decoder.Decoder;
+import javazoom.jlme.decoder.Header;
+import javazoom.jlme.decoder.OutputChannels;
+import javazoom.jlme.decoder.OutputRate;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 16 bit PCM of an MPEG stream, decoded as it is read: a read decodes the
+ * frames needed for it, straight into the array of the caller when a whole
+ * frame fits, and a skip goes over the frames without decoding them.
+ */
+final class DecodingInputStream extends InputStream {
+
+    private final BitStream stream;
+    private final Decoder decoder;
+    // the bytes of a frame decoded for a read smaller than a frame, not read yet
+    private final ByteBuffer pcm;
+    private final ByteOrder order;
+    private final int frameBytes;
+    private boolean ended;
+
+    private DecodingInputStream(BitStream stream, Decoder decoder, ByteOrder order) {
+        this.stream = stream;
+        this.decoder = decoder;
+        this.order = order;
+        frameBytes = 2 * decoder.getFrameSampleCount();
+        pcm = ByteBuffer.allocate(frameBytes).order(order);
+        pcm.flip();
+    }
+
+    /**
+     * Decodes a stream to PCM, with the channels and the rate of a format.
+     * The first frame of the stream is read.
+     *
+     * @param target The format wanted: the rate of the stream or its half or
+     *               quarter, or any if not specified, one channel for a mix
+     *               of a stereo stream, and the byte order.
+     * @throws IOException If the stream has no frame.
+     */
+    static AudioInputStream open(BitStream stream, AudioFormat target) throws IOException {
+        final Header header = stream.readFrame();
+        if (header == null) {
+            stream.close();
+            throw new IOException("No MPEG frame found.");
+        }
+        int rate = OutputRate.FULL_RATE;
+        if (target.getSampleRate() != AudioSystem.NOT_SPECIFIED) {
+            rate = Math.round(header.frequency() / target.getSampleRate());
+        }
+        if (rate != OutputRate.FULL_RATE && rate != OutputRate.HALF_RATE && rate != OutputRate.QUARTER_RATE) {
+            stream.close();
+            throw new IllegalArgumentException("Unsupported sample rate: " + target.getSampleRate());
+        }
+        final boolean mix = header.mode() != Header.SINGLE_CHANNEL && target.getChannels() == 1;
+        final Decoder decoder = new Decoder(header, stream, mix ? OutputChannels.DOWNMIX_CHANNELS : OutputChannels.BOTH_CHANNELS, rate);
+        final int channels = decoder.getOutputChannels();
+        final float frequency = decoder.getOutputFrequency();
+        final AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, frequency, 16, channels,
+                2 * channels, frequency, target.isBigEndian());
+        final ByteOrder order = target.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        return new AudioInputStream(new DecodingInputStream(stream, decoder, order), format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!pcm.hasRemaining()) {
+            if (ended) {
+                return -1;
+            }
+            if (len >= frameBytes) {
+                final int read = decoder.decode(ByteBuffer.wrap(b, off, len).order(order), Integer.MAX_VALUE);
+                if (read < 0) {
+                    ended = true;
+                    return -1;
+                }
+                if (read > 0) {
+                    return read;
+                }
+            } else {
+                decodeFrame();
+            }
+        }
+        final int read = Math.min(len, pcm.remaining());
+        pcm.get(b, off, read);
+        return read;
+    }
+
+    /**
+     * Skips the frames that end before the bytes wanted without decoding
+     * them, except the last one, decoded to restore the filter banks. The
+     * bytes after the skip are the ones of a decoding from the start.
+     */
+    public long skip(long n) throws IOException {
+        long skipped = Math.min(n, pcm.remaining());
+        pcm.position(pcm.position() + (int) skipped);
+        final long frames = (n - skipped) / frameBytes - 1;
+        if (frames > 0 && !ended) {
+            final long samples = decoder.skipFrames((int) Math.min(frames, Integer.MAX_VALUE));
+            if (samples < 0) {
+                ended = true;
+            } else {
+                skipped += 2 * samples;
+            }
+        }
+        while (skipped < n) {
+            if (!pcm.hasRemaining()) {
+                if (ended) {
+                    break;
+                }
+                decodeFrame();
+                continue;
+            }
+            final int dropped = (int) Math.min(n - skipped, pcm.remaining());
+            pcm.position(pcm.position() + dropped);
+            skipped += dropped;
+        }
+        return skipped;
+    }
+
+    public int available() {
+        return pcm.remaining();
+    }
+
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    /**
+     * Decodes the next frame into the bytes kept for the next reads.
+     */
+    private void decodeFrame() throws IOException {
+        pcm.clear();
+        if (decoder.decode(pcm, 1) < 0) {
+            ended = true;
+        }
+        pcm.flip();
+    }
+}
@@ -0,0 +1,138 @@
+package javazoom.jlme.spi;
+
+import javazoom.jlme.decoder.BitStream;
+import javazoom.jlme.decoder.FrameIndex;
+import javazoom.jlme.decoder.Header;
+import javazoom.jlme.tag.TagReader;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.sound.sampled.spi.AudioFileReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads MPEG 1 Layer 3 files for {@link AudioSystem}. The audio input streams
+ * are already decoded: 16 bit signed PCM, little endian, at the rate and with
+ * the channels of the file, decoded as they are read. The other formats of
+ * {@link MpegFormatConversionProvider} are reached from the stream of
+ * {@link #getAudioFileFormat} with {@link AudioSystem#getAudioInputStream(AudioFormat, AudioInputStream)}.
+ * <p>
+ * A stream is an MP3 stream if, after its ID3v2 tag if any, it starts with
+ * {@link #PROBE_FRAMES} frames that follow each other.
+ */
+public class MpegAudioFileReader extends AudioFileReader {
+
+    public static final AudioFileFormat.Type MP3 = new AudioFileFormat.Type("MP3", "mp3");
+
+    /**
+     * The bytes read after the tag to recognize a stream.
+     */
+    private static final int PROBE_SIZE = 8192;
+
+    /**
+     * The frames to find at the start of a stream to recognize it.
+     */
+    private static final int PROBE_FRAMES = 3;
+
+    public AudioFileFormat getAudioFileFormat(InputStream stream) throws UnsupportedAudioFileException, IOException {
+        return new AudioFileFormat(MP3, probe(stream), AudioSystem.NOT_SPECIFIED);
+    }
+
+    public AudioFileFormat getAudioFileFormat(URL url) throws UnsupportedAudioFileException, IOException {
+        try (InputStream in = new BufferedInputStream(url.openStream())) {
+            return getAudioFileFormat(in);
+        }
+    }
+
+    public AudioFileFormat getAudioFileFormat(File file) throws UnsupportedAudioFileException, IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return getAudioFileFormat(in);
+        }
+    }
+
+    public AudioInputStream getAudioInputStream(InputStream stream) throws UnsupportedAudioFileException, IOException {
+        final AudioFormat format = probe(stream);
+        return DecodingInputStream.open(new BitStream(stream), getPcmFormat(format));
+    }
+
+    public AudioInputStream getAudioInputStream(URL url) throws UnsupportedAudioFileException, IOException {
+        final InputStream in = new BufferedInputStream(url.openStream());
+        try {
+            return getAudioInputStream(in);
+        } catch (UnsupportedAudioFileException | IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public AudioInputStream getAudioInputStream(File file) throws UnsupportedAudioFileException, IOException {
+        final AudioFormat format;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            format = probe(in);
+        }
+        // the file is mapped rather than read through the probing stream
+        return DecodingInputStream.open(new BitStream(file.toPath()), getPcmFormat(format));
+    }
+
+    /**
+     * @return The default format of the decoded stream: 16 bit signed PCM,
+     * little endian, at the rate and with the channels of the file.
+     */
+    static AudioFormat getPcmFormat(AudioFormat format) {
+        final int channels = format.getChannels();
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, channels,
+                2 * channels, format.getSampleRate(), false);
+    }
+
+    /**
+     * Looks for the frames at the start of a stream, and resets it.
+     *
+     * @return The format of the stream.
+     * @throws UnsupportedAudioFileException If the stream is not an MP3 stream.
+     * @throws IOException                   If the stream cannot be read, or does not support marks.
+     */
+    private static AudioFormat probe(InputStream stream) throws UnsupportedAudioFileException, IOException {
+        if (!stream.markSupported()) {
+            throw new IOException("The stream does not support mark and reset.");
+        }
+        stream.mark(TagReader.HEADER_SIZE);
+        final byte[] tag = stream.readNBytes(TagReader.HEADER_SIZE);
+        stream.reset();
+        final int tagLength = TagReader.getTagLength(tag);
+        final int start = tagLength < 0 ? 0 : TagReader.HEADER_SIZE + tagLength;
+
+        stream.mark(start + PROBE_SIZE);
+        final byte[] prefix = stream.readNBytes(start + PROBE_SIZE);
+        stream.reset();
+
+        final FrameIndex index;
+        try {
+            index = FrameIndex.build(ByteBuffer.wrap(prefix));
+        } catch (IOException e) {
+            throw new UnsupportedAudioFileException("No MPEG 1 Layer 3 frame found.");
+        }
+        if (index.getFrameCount() < PROBE_FRAMES || index.getByteOffset(0) != start) {
+            throw new UnsupportedAudioFileException("No MPEG 1 Layer 3 stream found.");
+        }
+
+        final BitStream bitstream = new BitStream(new ByteArrayInputStream(prefix));
+        final Header header = bitstream.readFrame();
+        bitstream.close();
+        if (header == null) {
+            throw new UnsupportedAudioFileException("No MPEG 1 Layer 3 frame found.");
+        }
+        final int channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+        return new AudioFormat(MpegEncoding.MPEG1L3, header.frequency(), AudioSystem.NOT_SPECIFIED, channels,
+                AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, false);
+    }
+}
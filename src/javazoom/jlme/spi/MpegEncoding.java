@@ -0,0 +1,18 @@
+package javazoom.jlme.spi;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The encoding of the MPEG streams decoded by the providers of this package.
+ */
+public class MpegEncoding extends AudioFormat.Encoding {
+
+    /**
+     * MPEG 1 Layer 3.
+     */
+    public static final AudioFormat.Encoding MPEG1L3 = new MpegEncoding("MPEG1L3");
+
+    public MpegEncoding(String name) {
+        super(name);
+    }
+}
@@ -0,0 +1,80 @@
+package javazoom.jlme.spi;
+
+import javazoom.jlme.decoder.BitStream;
+import javazoom.jlme.decoder.OutputRate;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.spi.FormatConversionProvider;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes MPEG 1 Layer 3 audio input streams to 16 bit signed PCM, of either
+ * byte order. The PCM may have one channel for a stereo stream, its two
+ * channels mixed, and half or a quarter of the rate of the stream, decoded
+ * from the lower subbands only.
+ */
+public class MpegFormatConversionProvider extends FormatConversionProvider {
+
+    private static final AudioFormat.Encoding[] SOURCE_ENCODINGS = {MpegEncoding.MPEG1L3};
+    private static final AudioFormat.Encoding[] TARGET_ENCODINGS = {AudioFormat.Encoding.PCM_SIGNED};
+    private static final AudioFormat.Encoding[] NO_ENCODINGS = {};
+    private static final int[] RATES = {OutputRate.FULL_RATE, OutputRate.HALF_RATE, OutputRate.QUARTER_RATE};
+
+    public AudioFormat.Encoding[] getSourceEncodings() {
+        return SOURCE_ENCODINGS.clone();
+    }
+
+    public AudioFormat.Encoding[] getTargetEncodings() {
+        return TARGET_ENCODINGS.clone();
+    }
+
+    public AudioFormat.Encoding[] getTargetEncodings(AudioFormat sourceFormat) {
+        return MpegEncoding.MPEG1L3.equals(sourceFormat.getEncoding()) ? getTargetEncodings() : NO_ENCODINGS;
+    }
+
+    public AudioFormat[] getTargetFormats(AudioFormat.Encoding targetEncoding, AudioFormat sourceFormat) {
+        final List<AudioFormat> formats = new ArrayList<>();
+        if (!MpegEncoding.MPEG1L3.equals(sourceFormat.getEncoding())
+                || !AudioFormat.Encoding.PCM_SIGNED.equals(targetEncoding)) {
+            return new AudioFormat[0];
+        }
+        final int channels = sourceFormat.getChannels();
+        final float frequency = sourceFormat.getSampleRate();
+        for (int rate : RATES) {
+            final float rateFrequency = frequency == AudioSystem.NOT_SPECIFIED ? frequency : frequency / rate;
+            for (int outputs = channels; outputs >= 1; outputs--) {
+                formats.add(pcm(rateFrequency, outputs, false));
+                formats.add(pcm(rateFrequency, outputs, true));
+            }
+            if (frequency == AudioSystem.NOT_SPECIFIED) {
+                break;
+            }
+        }
+        return formats.toArray(new AudioFormat[0]);
+    }
+
+    public AudioInputStream getAudioInputStream(AudioFormat.Encoding targetEncoding, AudioInputStream sourceStream) {
+        final AudioFormat source = sourceStream.getFormat();
+        return getAudioInputStream(new AudioFormat(targetEncoding, source.getSampleRate(), 16, source.getChannels(),
+                2 * source.getChannels(), source.getSampleRate(), false), sourceStream);
+    }
+
+    public AudioInputStream getAudioInputStream(AudioFormat targetFormat, AudioInputStream sourceStream) {
+        if (!isConversionSupported(targetFormat, sourceStream.getFormat())) {
+            throw new IllegalArgumentException("Unsupported conversion: " + sourceStream.getFormat() + " to " + targetFormat);
+        }
+        try {
+            return DecodingInputStream.open(new BitStream(sourceStream), targetFormat);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The stream cannot be decoded.", e);
+        }
+    }
+
+    private static AudioFormat pcm(float frequency, int channels, boolean bigEndian) {
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, frequency, 16, channels, 2 * channels, frequency, bigEndian);
+    }
+}
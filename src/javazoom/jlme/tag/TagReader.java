@@ -19,6 +19,11 @@ import java.io.IOException;
  */
 public class TagReader {
 
+    /**
+     * The size of the ID3v2 header, and of the footer when present.
+     */
+    public static final int HEADER_SIZE = 10;
+
     /**
      * Buffer that store the bytes of data ID3 tag. (Excluding the header).
      */
@@ -35,8 +40,8 @@ public class TagReader {
         int totalBytesRead = 0;
         // The ID3v2 tag header, which should be the first information in the
         // file, is 10 bytes .
-        byte[] header = new byte[10];
-        totalBytesRead += buffer.read(header, 0, 10);
+        byte[] header = new byte[HEADER_SIZE];
+        totalBytesRead += buffer.read(header, 0, HEADER_SIZE);
         verifyHeader(header);
         // Create a new array with the four bytes of size
         byte[] size = new byte[4];
@@ -47,7 +52,31 @@ public class TagReader {
         int sizeTag = getSizeTag(size);
         dataTag = new byte[sizeTag];
         totalBytesRead += buffer.read(dataTag, 0, sizeTag);
-        assert totalBytesRead == sizeTag + 10;
+        assert totalBytesRead == sizeTag + HEADER_SIZE;
+    }
+
+    /**
+     * Tells the number of bytes of the tag that follow its header, so the tag
+     * can be skipped without reading its content.
+     *
+     * @param header The first ten bytes of the file.
+     * @return The size of the tag after its header, including the footer if
+     * the tag has one, or -1 if the bytes are not an ID3v2 header.
+     */
+    public static int getTagLength(final byte[] header) {
+        if (header.length < HEADER_SIZE || header[0] != 'I' || header[1] != 'D' || header[2] != '3') {
+            return -1;
+        }
+        // The size bytes never have the bit 7 set.
+        if (((header[6] | header[7] | header[8] | header[9]) & 0x80) != 0) {
+            return -1;
+        }
+        int length = (header[6] << 21) | (header[7] << 14) | (header[8] << 7) | header[9];
+        // In ID3v2.4 the bit 4 of the flags says that a footer follows the tag.
+        if (header[3] == 4 && (header[5] & 0x10) != 0) {
+            length += HEADER_SIZE;
+        }
+        return length;
     }
 
     /**
@@ -88,6 +117,6 @@ public class TagReader {
      */
     private int getSizeTag(final byte[] header) {
         assert header.length == 4;
-        return (header[0] << 24) | (header[1] << 16) | (header[2] << 8) | header[3];
+        return (header[0] << 21) | (header[1] << 14) | (header[2] << 7) | header[3];
     }
 }
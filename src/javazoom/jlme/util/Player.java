@@ -41,8 +41,16 @@ public class Player {
     private final BitStream bitstream;
     private boolean playable = true;
 
+    public Player(InputStream stream) {
+        bitstream = new BitStream(stream);
+    }
+
+    /**
+     * @deprecated The second stream is not read anymore, use {@link #Player(InputStream)}.
+     */
+    @Deprecated
     public Player(InputStream stream, InputStream copy) {
-        bitstream = new BitStream(stream, copy);
+        this(stream);
     }
 
 
@@ -76,8 +84,7 @@ public class Player {
             if (file.equalsIgnoreCase("-url")) {
                 if (args.length > 1) {
                     URL u = new URL(args[1]);
-                    Player player = new Player(new BufferedInputStream(u.openStream(), 2048),
-                            new BufferedInputStream(u.openStream(), 2048));
+                    Player player = new Player(new BufferedInputStream(u.openStream(), 2048));
                     System.out.println("starting");
                     player.play();
                     System.out.println("ending");
@@ -86,8 +93,7 @@ public class Player {
                 }
             } else {
                 // Test: Available: 764176
-                Player player = new Player(new BufferedInputStream(new FileInputStream(file), 2048),
-                        new BufferedInputStream(new FileInputStream(file), 2048));
+                Player player = new Player(new BufferedInputStream(new FileInputStream(file), 2048));
                 System.out.println("starting");
                 player.play();
                 System.out.println("ending");
@@ -109,6 +115,10 @@ public class Player {
         boolean first = true;
         int length;
         Header header = bitstream.readFrame();
+        if (header == null) {
+            bitstream.close();
+            return;
+        }
         Decoder decoder = new Decoder(header, bitstream);
         while (playable) {
             try {
@@ -124,6 +134,7 @@ public class Player {
                 line.write(output.getBuffer(), 0, length);
                 bitstream.closeFrame();
                 header = bitstream.readFrame();
+                if (header == null) break;
             } catch (Exception e) {
                 break;
             }
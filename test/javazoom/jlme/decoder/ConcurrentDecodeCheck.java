@@ -0,0 +1,96 @@
+package javazoom.jlme.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes MP3 files on many threads at once, each file several times, and
+ * checks that every decoding gives the samples of the file decoded alone,
+ * bit for bit. The decoders are created while the others decode, so the
+ * decoders of all the threads share nothing but the static tables.
+ * <p>
+ * Usage: <code>java javazoom.jlme.decoder.ConcurrentDecodeCheck [-threads n]
+ * [-rounds n] file.mp3...</code>, the exit status is 1 if a decoding differs.
+ */
+public final class ConcurrentDecodeCheck {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        int rounds = 8;
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-rounds")) {
+                rounds = Integer.parseInt(args[++i]);
+            } else {
+                files.add(Paths.get(args[i]));
+            }
+        }
+        // each file alone, before any other thread runs
+        final byte[][] expected = new byte[files.size()][];
+        for (int i = 0; i < files.size(); i++) {
+            expected[i] = decode(files.get(i));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<byte[]>> results = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (Path file : files) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return decode(file);
+                }));
+            }
+        }
+        start.countDown();
+
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            final int file = i % files.size();
+            try {
+                if (!Arrays.equals(results.get(i).get(), expected[file])) {
+                    failures++;
+                    System.out.println(files.get(file) + ": the decoding " + i + " differs");
+                }
+            } catch (ExecutionException e) {
+                failures++;
+                System.out.println(files.get(file) + ": the decoding " + i + " failed: " + e.getCause());
+            }
+        }
+        executor.shutdown();
+        System.out.println(results.size() + " decodings on " + threads + " threads, " + failures + " failures");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static byte[] decode(Path file) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BitStream stream = new BitStream(file);
+        try {
+            Header header = stream.readFrame();
+            final Decoder decoder = new Decoder(header, stream);
+            while (header != null) {
+                final SampleBuffer output = decoder.decodeFrame();
+                out.write(output.getBuffer(), 0, output.size());
+                stream.closeFrame();
+                header = stream.readFrame();
+            }
+        } finally {
+            stream.close();
+        }
+        return out.toByteArray();
+    }
+}
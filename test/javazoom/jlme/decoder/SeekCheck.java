@@ -0,0 +1,79 @@
+package javazoom.jlme.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Seeks to every frame of MP3 files with a {@link FrameIndex}, saved to a
+ * sidecar file and loaded back, and checks that the samples from there
+ * to the end are the ones of a decoding from the start, bit for bit.
+ * <p>
+ * Usage: <code>java javazoom.jlme.decoder.SeekCheck file.mp3...</code>, the
+ * exit status is 1 if a seek differs.
+ */
+public final class SeekCheck {
+
+    public static void main(String[] args) throws IOException {
+        int failures = 0;
+        int seeks = 0;
+        for (String name : args) {
+            final Path file = Paths.get(name);
+            final byte[] expected = decode(file, null, 0);
+            final Path sidecar = Files.createTempFile("seek", ".idx");
+            try {
+                FrameIndex.build(file).save(sidecar);
+                final FrameIndex index = FrameIndex.load(sidecar);
+                for (int frame = 0; frame < index.getFrameCount(); frame++) {
+                    if (index.getMainDataLength(frame) < 0) {
+                        failures++;
+                        System.out.println(name + ": the frame " + frame + " has no main data length");
+                    }
+                    final long sample = index.getSampleOffset(frame);
+                    final byte[] actual = decode(file, index, sample);
+                    final int offset = expected.length - actual.length;
+                    seeks++;
+                    if (offset < 0 || !Arrays.equals(actual, 0, actual.length, expected, offset, expected.length)) {
+                        failures++;
+                        System.out.println(name + ": the seek to the frame " + frame + " differs");
+                    }
+                }
+            } finally {
+                Files.delete(sidecar);
+            }
+        }
+        System.out.println(seeks + " seeks, " + failures + " failures");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return The samples of the file, from the frame of a sample if an index is given.
+     */
+    private static byte[] decode(Path file, FrameIndex index, long sample) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BitStream stream = new BitStream(file);
+        try {
+            Header header = stream.readFrame();
+            final Decoder decoder = new Decoder(header, stream);
+            if (index != null) {
+                stream.closeFrame();
+                decoder.seek(index, sample);
+                header = stream.readFrame();
+            }
+            while (header != null) {
+                final SampleBuffer output = decoder.decodeFrame();
+                out.write(output.getBuffer(), 0, output.size());
+                stream.closeFrame();
+                header = stream.readFrame();
+            }
+        } finally {
+            stream.close();
+        }
+        return out.toByteArray();
+    }
+}